@@ -0,0 +1,87 @@
+/*
+ * Copyright 2026 Steinar Bang
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package no.priv.bang.osgi.service.adapters.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.osgi.service.log.LogService;
+
+import no.priv.bang.osgi.service.adapters.logservice.LogServiceAdapter;
+import no.priv.bang.osgi.service.adapters.logservice.OverflowPolicy;
+
+/**
+ * Measures the throughput of {@link LogServiceAdapter#log(int, String)}
+ * while the adapter has no {@link LogService} and saves the log messages,
+ * with 1 to 64 threads logging at the same time.
+ *
+ * <p>The buffer fills up during warmup, so the measurements include making
+ * room in a full buffer according to the overflow policy.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class BufferingThroughputBenchmark {
+
+    @Param({ "DROP_OLDEST", "DROP_NEWEST" })
+    public OverflowPolicy overflowPolicy;
+
+    private LogServiceAdapter adapter;
+
+    @Setup
+    public void setUp() {
+        adapter = new LogServiceAdapter().setOverflowPolicy(overflowPolicy);
+    }
+
+    @Benchmark
+    @Threads(1)
+    public void log1Thread() {
+        adapter.log(LogService.LOG_INFO, "Buffered message");
+    }
+
+    @Benchmark
+    @Threads(4)
+    public void log4Threads() {
+        adapter.log(LogService.LOG_INFO, "Buffered message");
+    }
+
+    @Benchmark
+    @Threads(16)
+    public void log16Threads() {
+        adapter.log(LogService.LOG_INFO, "Buffered message");
+    }
+
+    @Benchmark
+    @Threads(64)
+    public void log64Threads() {
+        adapter.log(LogService.LOG_INFO, "Buffered message");
+    }
+
+}
@@ -0,0 +1,86 @@
+/*
+ * Copyright 2026 Steinar Bang
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package no.priv.bang.osgi.service.adapters.benchmarks;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.concurrent.TimeUnit;
+
+import javax.sql.DataSource;
+
+import org.h2.jdbcx.JdbcDataSource;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import no.priv.bang.osgi.service.adapters.jdbc.DataSourceAdapter;
+
+/**
+ * Measures the overhead of {@link DataSourceAdapter#getConnection()}
+ * compared to getting a connection directly from the wrapped in-memory
+ * H2 {@link DataSource}.
+ *
+ * <p>A connection is kept open for the duration of the benchmark, so that
+ * the in-memory database isn't created and dropped on every call.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class DataSourceAdapterBenchmark {
+
+    private final DataSourceAdapter adapter = new DataSourceAdapter();
+    private JdbcDataSource datasource;
+    private Connection keepAlive;
+
+    @Setup
+    public void setUp() throws SQLException {
+        datasource = new JdbcDataSource();
+        datasource.setURL("jdbc:h2:mem:benchmark");
+        keepAlive = datasource.getConnection();
+        adapter.setDatasource(datasource);
+    }
+
+    @TearDown
+    public void tearDown() throws SQLException {
+        keepAlive.close();
+    }
+
+    @Benchmark
+    public boolean directDataSource() throws SQLException {
+        try (var connection = datasource.getConnection()) {
+            return connection.isClosed();
+        }
+    }
+
+    @Benchmark
+    public boolean dataSourceAdapter() throws SQLException {
+        try (var connection = adapter.getConnection()) {
+            return connection.isClosed();
+        }
+    }
+
+}
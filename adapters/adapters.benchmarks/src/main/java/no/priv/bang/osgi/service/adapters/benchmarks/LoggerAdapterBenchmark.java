@@ -0,0 +1,75 @@
+/*
+ * Copyright 2026 Steinar Bang
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package no.priv.bang.osgi.service.adapters.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.osgi.service.log.Logger;
+
+import no.priv.bang.osgi.service.adapters.logservice.LoggerAdapter;
+
+/**
+ * Measures the overhead of logging through a {@link LoggerAdapter}, compared
+ * to logging directly to the {@link Logger} of the same {@link QuietLogService},
+ * both when the level is enabled and when it isn't.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class LoggerAdapterBenchmark {
+
+    @Param({ "true", "false" })
+    public boolean debugEnabled;
+
+    private final LoggerAdapter adapter = new LoggerAdapter(LoggerAdapterBenchmark.class);
+    private Logger direct;
+    private int counter;
+    private String name = "benchmark";
+
+    @Setup
+    public void setUp() {
+        var logservice = new QuietLogService();
+        logservice.setTraceEnabled(debugEnabled);
+        logservice.setDebugEnabled(debugEnabled);
+        direct = logservice.getLogger(LoggerAdapterBenchmark.class);
+        adapter.setLogService(logservice);
+    }
+
+    @Benchmark
+    public void directLogger() {
+        direct.debug("Call {} of {}", ++counter, name);
+    }
+
+    @Benchmark
+    public void loggerAdapter() {
+        adapter.debug("Call {} of {}", ++counter, name);
+    }
+
+}
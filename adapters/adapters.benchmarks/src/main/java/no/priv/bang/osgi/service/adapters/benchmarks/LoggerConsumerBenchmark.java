@@ -0,0 +1,84 @@
+/*
+ * Copyright 2026 Steinar Bang
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package no.priv.bang.osgi.service.adapters.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.osgi.service.log.LoggerConsumer;
+
+import no.priv.bang.osgi.service.adapters.logservice.LoggerAdapter;
+
+/**
+ * Compares the cost of logging with a {@link LoggerConsumer} to logging with
+ * the format string log methods, through a {@link LoggerAdapter}, both when
+ * the level is enabled and when it isn't.
+ *
+ * <p>The consumers capture the arguments, like they would in real code, so
+ * the cost of creating the consumer is included.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class LoggerConsumerBenchmark {
+
+    @Param({ "true", "false" })
+    public boolean debugEnabled;
+
+    private final LoggerAdapter logger = new LoggerAdapter(LoggerConsumerBenchmark.class);
+    private int counter;
+    private String name = "benchmark";
+
+    @Setup
+    public void setUp() {
+        var logservice = new QuietLogService();
+        logservice.setTraceEnabled(debugEnabled);
+        logservice.setDebugEnabled(debugEnabled);
+        logger.setLogService(logservice);
+    }
+
+    @Benchmark
+    public void formatString() {
+        logger.debug("Call {} of {}", ++counter, name);
+    }
+
+    @Benchmark
+    public void loggerConsumer() {
+        var count = ++counter;
+        logger.debug(l -> l.debug("Call {} of {}", count, name));
+    }
+
+    @Benchmark
+    public void guardedFormatString() {
+        if (logger.isDebugEnabled()) {
+            logger.debug("Call {} of {}", ++counter, name);
+        }
+    }
+
+}
@@ -0,0 +1,66 @@
+/*
+ * Copyright 2026 Steinar Bang
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package no.priv.bang.osgi.service.adapters.benchmarks;
+
+import org.osgi.framework.ServiceReference;
+
+import no.priv.bang.osgi.service.mocks.logservice.MockLogService;
+
+/**
+ * A {@link MockLogService} that counts the log messages it receives, instead
+ * of keeping them in a list and writing them to standard error, so that
+ * benchmarks measure the adapters and not the mock.
+ */
+@SuppressWarnings("rawtypes")
+public class QuietLogService extends MockLogService {
+
+    private long messageCount;
+    private long messageLength;
+
+    public long getMessageCount() {
+        return messageCount;
+    }
+
+    public long getMessageLength() {
+        return messageLength;
+    }
+
+    @Override
+    public void log(int level, String message) {
+        received(message);
+    }
+
+    @Override
+    public void log(int level, String message, Throwable exception) {
+        received(message);
+    }
+
+    @Override
+    public void log(ServiceReference sr, int level, String message) {
+        received(message);
+    }
+
+    @Override
+    public void log(ServiceReference sr, int level, String message, Throwable exception) {
+        received(message);
+    }
+
+    private void received(String message) {
+        ++messageCount;
+        messageLength += message != null ? message.length() : 0;
+    }
+
+}
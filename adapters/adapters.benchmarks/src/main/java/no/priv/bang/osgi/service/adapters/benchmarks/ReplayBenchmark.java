@@ -0,0 +1,73 @@
+/*
+ * Copyright 2026 Steinar Bang
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package no.priv.bang.osgi.service.adapters.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.osgi.service.log.LogService;
+
+import no.priv.bang.osgi.service.adapters.logservice.LogServiceAdapter;
+
+/**
+ * Measures the time {@link LogServiceAdapter#setLogService(LogService)}
+ * takes to replay the saved log messages to the injected {@link LogService}.
+ *
+ * <p>Each invocation gets a new adapter with a buffer holding exactly the
+ * saved log messages, so that nothing is dropped before the replay.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+@Fork(1)
+public class ReplayBenchmark {
+
+    @Param({ "10000", "1000000" })
+    public int messageCount;
+
+    private LogServiceAdapter adapter;
+    private QuietLogService logservice;
+
+    @Setup(Level.Invocation)
+    public void setUp() {
+        adapter = new LogServiceAdapter().setBufferCapacity(messageCount);
+        for (var i = 0; i < messageCount; ++i) {
+            adapter.log(LogService.LOG_INFO, "Saved message");
+        }
+
+        logservice = new QuietLogService();
+    }
+
+    @Benchmark
+    public long replay() {
+        adapter.setLogService(logservice);
+        return logservice.getMessageCount();
+    }
+
+}
@@ -0,0 +1,58 @@
+/*
+ * Copyright 2017-2026 Steinar Bang
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package no.priv.bang.osgi.service.adapters.jdbc;
+
+import static no.priv.bang.osgi.service.mocks.measurement.HeapMeasurement.*;
+import static org.junit.jupiter.api.Assertions.*;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+import java.sql.SQLException;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * Checks that {@link DataSourceAdapter#getConnection()} doesn't allocate
+ * anything of its own, measured with
+ * {@link com.sun.management.ThreadMXBean#getThreadAllocatedBytes(long)}.
+ *
+ * <p>The adapter wraps another {@link DataSourceAdapter}, that wraps the
+ * NullDataSource, so that neither the wrapped DataSource nor a mock allocates.
+ */
+class DataSourceAdapterAllocationTest {
+
+    static final long GET_CONNECTION_BUDGET = 0;
+
+    @Test
+    void testGetConnectionDelegation() throws SQLException {
+        assumeTrue(canMeasureAllocatedBytes(), "Allocated bytes can't be measured on this JVM");
+        var adapter = new DataSourceAdapter();
+        adapter.setDatasource(new DataSourceAdapter());
+        assertNull(adapter.getConnection());
+
+        var bytesPerCall = allocatedBytesPerCall(() -> getConnection(adapter));
+
+        assertEquals(GET_CONNECTION_BUDGET, bytesPerCall);
+    }
+
+    private static void getConnection(DataSourceAdapter adapter) {
+        try {
+            adapter.getConnection();
+        } catch (SQLException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+}
@@ -0,0 +1,42 @@
+/*
+ * Copyright 2017-2026 Steinar Bang
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package no.priv.bang.osgi.service.adapters.jdbc;
+
+import static no.priv.bang.osgi.service.mocks.measurement.HeapMeasurement.*;
+import static org.junit.jupiter.api.Assertions.*;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * Pins the heap footprint of a {@link DataSourceAdapter}, measured with Java
+ * Object Layout, as what one more adapter adds to the heap.  The budget is for
+ * a 64 bit JVM with compressed references, and the test is skipped on other JVMs.
+ */
+class DataSourceAdapterFootprintTest {
+
+    static final long DATASOURCE_ADAPTER_BUDGET = 16;
+
+    @Test
+    void testDataSourceAdapterFootprint() {
+        assumeTrue(hasCompressedReferences(), "Footprint budget is for compressed references");
+
+        var footprint = footprintPerInstance(DataSourceAdapter::new);
+
+        assertTrue(footprint <= DATASOURCE_ADAPTER_BUDGET, "DataSourceAdapter footprint " + footprint + " bytes exceeds budget");
+    }
+
+}
@@ -0,0 +1,53 @@
+/*
+ * Copyright 2026 Steinar Bang
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package no.priv.bang.osgi.service.adapters.logservice;
+
+import org.osgi.service.log.FormatterLogger;
+import org.osgi.service.log.LogService;
+
+/**
+ * A {@link FormatterLogger} for a class that can be used whether a
+ * {@link LogService} has been set or not, working the same way as
+ * {@link LoggerAdapter}, but with printf format strings.
+ *
+ * <p>Log calls saved before the {@link LogService} is set, are replayed on
+ * a {@link FormatterLogger} from the {@link LogService}.  When a saved log
+ * call has to be formatted by the adapter, format strings only using the
+ * "%s", "%d" and "%x" conversions are formatted without creating a
+ * {@link java.util.Formatter}, and the parsed format strings are cached.
+ *
+ * @author Steinar Bang
+ *
+ */
+public class FormatterLoggerAdapter extends LoggerAdapter implements FormatterLogger {
+
+    public FormatterLoggerAdapter(Class<?> clazz) {
+        this(clazz, null);
+    }
+
+    FormatterLoggerAdapter(Class<?> clazz, LogServiceAdapter savedLogCalls) {
+        super(clazz, FormatterLogger.class, savedLogCalls);
+    }
+
+    /**
+     * @return this adapter, since it already is a {@link FormatterLogger}
+     */
+    @Override
+    public FormatterLogger getFormatterLogger() {
+        return this;
+    }
+
+}
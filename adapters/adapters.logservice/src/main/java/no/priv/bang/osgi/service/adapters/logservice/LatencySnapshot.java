@@ -0,0 +1,88 @@
+/*
+ * Copyright 2026 Steinar Bang
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package no.priv.bang.osgi.service.adapters.logservice;
+
+import no.priv.bang.osgi.service.adapters.logservice.internal.LatencyHistogram;
+
+/**
+ * The latencies recorded in a histogram at one point in time.  The latencies
+ * are in nanoseconds, and are rounded up to the highest value of their
+ * histogram bucket, so they are at most about 6% too high.
+ *
+ * @see LogAdapterMetrics#getDelegateLatency()
+ *
+ * @author Steinar Bang
+ *
+ */
+public class LatencySnapshot {
+
+    private final long[] counts;
+    private final long count;
+
+    LatencySnapshot(long[] counts) {
+        this.counts = counts;
+        var total = 0L;
+        for (var bucketCount : counts) {
+            total += bucketCount;
+        }
+
+        count = total;
+    }
+
+    /**
+     * @return the number of latencies recorded
+     */
+    public long getCount() {
+        return count;
+    }
+
+    /**
+     * Find the latency that a percentage of the recorded latencies are at or below.
+     *
+     * @param percentile the percentage, e.g. 99.9
+     * @return the latency in nanoseconds, or 0 if no latencies have been recorded
+     */
+    public long getValueAtPercentile(double percentile) {
+        if (count == 0) {
+            return 0;
+        }
+
+        var rank = Math.max(1, Math.round(Math.min(100.0, percentile) / 100.0 * count)); // Rounded, since e.g. 99.9% of 1000 isn't exactly 999 in floating point
+        var seen = 0L;
+        for (var i = 0; i < counts.length; ++i) {
+            seen += counts[i];
+            if (seen >= rank) {
+                return LatencyHistogram.highestValueInBucket(i);
+            }
+        }
+
+        return getMaxValue();
+    }
+
+    /**
+     * @return the highest latency recorded in nanoseconds, or 0 if no latencies have been recorded
+     */
+    public long getMaxValue() {
+        for (var i = counts.length - 1; i >= 0; --i) {
+            if (counts[i] > 0) {
+                return LatencyHistogram.highestValueInBucket(i);
+            }
+        }
+
+        return 0;
+    }
+
+}
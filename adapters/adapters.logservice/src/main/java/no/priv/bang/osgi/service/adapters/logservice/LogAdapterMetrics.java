@@ -0,0 +1,226 @@
+/*
+ * Copyright 2026 Steinar Bang
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package no.priv.bang.osgi.service.adapters.logservice;
+
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.IntSupplier;
+import java.util.function.LongSupplier;
+
+import javax.management.JMException;
+import javax.management.ObjectName;
+
+import org.osgi.service.log.LogService;
+
+import no.priv.bang.osgi.service.adapters.logservice.internal.LatencyHistogram;
+
+/**
+ * The metrics of a {@link LogServiceAdapter}, enabled with
+ * {@link LogServiceAdapter#setMetricsEnabled(boolean)}.
+ *
+ * <p>The counters are {@link LongAdder}s, so that logging threads counting
+ * log calls at the same time, don't contend on a single counter.  The
+ * current buffer size and the dropped count are read from the buffer of
+ * the adapter when asked for.
+ *
+ * <p>The metrics can be registered as an MBean in the platform MBean server
+ * with {@link #registerMBean(String)}, or be registered as an OSGi service
+ * with the {@link LogAdapterMetricsMXBean} interface, e.g. for a JMX whiteboard.
+ *
+ * @author Steinar Bang
+ *
+ */
+public class LogAdapterMetrics implements LogAdapterMetricsMXBean {
+
+    /**
+     * The domain of the {@link ObjectName} the MBean is registered with.
+     */
+    public static final String OBJECT_NAME_DOMAIN = "no.priv.bang.osgi.service.adapters.logservice";
+
+    private final IntSupplier bufferSize;
+    private final LongSupplier droppedCount;
+    private final LongAdder[] logCalls = new LongAdder[LogService.LOG_DEBUG + 1];
+    private final AtomicInteger peakBufferSize = new AtomicInteger();
+    private final LongAdder replays = new LongAdder();
+    private final LongAdder replayedMessages = new LongAdder();
+    private final LongAdder replayNanos = new LongAdder();
+    private volatile long lastReplayNanos;
+    private final LatencyHistogram delegateLatency = new LatencyHistogram();
+    private ObjectName objectName;
+
+    LogAdapterMetrics(IntSupplier bufferSize, LongSupplier droppedCount) {
+        this.bufferSize = bufferSize;
+        this.droppedCount = droppedCount;
+        for (var level = LogService.LOG_ERROR; level <= LogService.LOG_DEBUG; ++level) {
+            logCalls[level] = new LongAdder();
+        }
+    }
+
+    void logged(int level) {
+        logCalls[Math.max(LogService.LOG_ERROR, Math.min(LogService.LOG_DEBUG, level))].increment();
+    }
+
+    void saved(int currentBufferSize) {
+        if (currentBufferSize > peakBufferSize.get()) {
+            peakBufferSize.accumulateAndGet(currentBufferSize, Math::max);
+        }
+    }
+
+    void replayed(int messages) {
+        replayedMessages.add(messages);
+    }
+
+    void replayFinished(long nanos) {
+        replays.increment();
+        replayNanos.add(nanos);
+        lastReplayNanos = nanos;
+    }
+
+    LatencyHistogram delegateLatencyHistogram() {
+        return delegateLatency;
+    }
+
+    /**
+     * Take a snapshot of the times of the log calls on the {@link LogService}
+     * and its loggers, recorded when enabled with
+     * {@link LogServiceAdapter#setDelegateLatencyRecorded(boolean)}.
+     *
+     * @return the latencies recorded until now
+     */
+    public LatencySnapshot getDelegateLatency() {
+        return new LatencySnapshot(delegateLatency.counts());
+    }
+
+    @Override
+    public long getErrorCount() {
+        return logCalls[LogService.LOG_ERROR].sum();
+    }
+
+    @Override
+    public long getWarningCount() {
+        return logCalls[LogService.LOG_WARNING].sum();
+    }
+
+    @Override
+    public long getInfoCount() {
+        return logCalls[LogService.LOG_INFO].sum();
+    }
+
+    @Override
+    public long getDebugCount() {
+        return logCalls[LogService.LOG_DEBUG].sum();
+    }
+
+    @Override
+    public int getBufferSize() {
+        return bufferSize.getAsInt();
+    }
+
+    @Override
+    public int getPeakBufferSize() {
+        return peakBufferSize.get();
+    }
+
+    @Override
+    public long getDroppedCount() {
+        return droppedCount.getAsLong();
+    }
+
+    @Override
+    public long getReplayCount() {
+        return replays.sum();
+    }
+
+    @Override
+    public long getReplayedMessageCount() {
+        return replayedMessages.sum();
+    }
+
+    @Override
+    public long getReplayTimeMillis() {
+        return TimeUnit.NANOSECONDS.toMillis(replayNanos.sum());
+    }
+
+    @Override
+    public long getLastReplayTimeMillis() {
+        return TimeUnit.NANOSECONDS.toMillis(lastReplayNanos);
+    }
+
+    @Override
+    public long getDelegateCallCount() {
+        return getDelegateLatency().getCount();
+    }
+
+    @Override
+    public long getDelegateLatencyP50Nanos() {
+        return getDelegateLatency().getValueAtPercentile(50.0);
+    }
+
+    @Override
+    public long getDelegateLatencyP99Nanos() {
+        return getDelegateLatency().getValueAtPercentile(99.0);
+    }
+
+    @Override
+    public long getDelegateLatencyP999Nanos() {
+        return getDelegateLatency().getValueAtPercentile(99.9);
+    }
+
+    @Override
+    public long getDelegateLatencyMaxNanos() {
+        return getDelegateLatency().getMaxValue();
+    }
+
+    /**
+     * Register the metrics as an MBean in the platform MBean server, with an
+     * {@link ObjectName} of type LogServiceAdapter in the {@link #OBJECT_NAME_DOMAIN}
+     * domain.  If the metrics already are registered, the old registration is removed.
+     *
+     * @param name the name of the adapter, e.g. the name of the component using it
+     * @return the {@link ObjectName} the MBean was registered with
+     * @throws IllegalStateException if the MBean couldn't be registered, e.g. because the name is in use
+     */
+    public synchronized ObjectName registerMBean(String name) {
+        unregisterMBean();
+        try {
+            var newObjectName = new ObjectName(OBJECT_NAME_DOMAIN + ":type=LogServiceAdapter,name=" + ObjectName.quote(name));
+            ManagementFactory.getPlatformMBeanServer().registerMBean(this, newObjectName);
+            objectName = newObjectName;
+            return newObjectName;
+        } catch (JMException e) {
+            throw new IllegalStateException("Failed to register log adapter metrics MBean with name " + name, e);
+        }
+    }
+
+    /**
+     * Remove the MBean registered by {@link #registerMBean(String)}, if any.
+     * Intended for the deactivate method of a DS component.
+     */
+    public synchronized void unregisterMBean() {
+        if (objectName != null) {
+            try {
+                ManagementFactory.getPlatformMBeanServer().unregisterMBean(objectName);
+            } catch (JMException e) {
+                // Already unregistered, nothing to do
+            }
+
+            objectName = null;
+        }
+    }
+
+}
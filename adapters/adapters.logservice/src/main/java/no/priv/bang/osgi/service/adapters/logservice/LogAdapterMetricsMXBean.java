@@ -0,0 +1,123 @@
+/*
+ * Copyright 2026 Steinar Bang
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package no.priv.bang.osgi.service.adapters.logservice;
+
+/**
+ * The management interface of {@link LogAdapterMetrics}, showing how many
+ * log messages a {@link LogServiceAdapter} has handled, how many it has
+ * saved while waiting for a {@link org.osgi.service.log.LogService}, and
+ * how long replaying the saved log messages has taken.
+ *
+ * <p>The log calls are counted by {@link org.osgi.service.log.LogService} log
+ * level.  Log calls on loggers are counted as the level they are saved with,
+ * i.e. trace as debug, and audit as info.  A log call passed on to a logger
+ * of the {@link org.osgi.service.log.LogService} is only counted if the logger
+ * has the level enabled.  The log methods of the
+ * {@link org.osgi.service.log.LogService} have no level check, so log calls
+ * passed on to them are all counted.
+ *
+ * <p>The delegate latencies are the times of the log calls on the
+ * {@link org.osgi.service.log.LogService} and its loggers, and are only
+ * recorded when enabled with
+ * {@link LogServiceAdapter#setDelegateLatencyRecorded(boolean)}.  Each
+ * latency attribute takes a new snapshot of the latency histogram.
+ *
+ * @author Steinar Bang
+ *
+ */
+public interface LogAdapterMetricsMXBean {
+
+    /**
+     * @return the number of error log messages passed on to the LogService or saved
+     */
+    long getErrorCount();
+
+    /**
+     * @return the number of warning log messages passed on to the LogService or saved
+     */
+    long getWarningCount();
+
+    /**
+     * @return the number of info log messages passed on to the LogService or saved
+     */
+    long getInfoCount();
+
+    /**
+     * @return the number of debug log messages passed on to the LogService or saved
+     */
+    long getDebugCount();
+
+    /**
+     * @return the number of log messages currently saved, waiting for a LogService
+     */
+    int getBufferSize();
+
+    /**
+     * @return the largest number of log messages that have been saved at the same time
+     */
+    int getPeakBufferSize();
+
+    /**
+     * @return the number of saved log messages dropped because the buffer was full
+     */
+    long getDroppedCount();
+
+    /**
+     * @return the number of times saved log messages have been replayed to a LogService
+     */
+    long getReplayCount();
+
+    /**
+     * @return the number of saved log messages replayed to a LogService
+     */
+    long getReplayedMessageCount();
+
+    /**
+     * @return the wall clock time spent replaying saved log messages, in milliseconds
+     */
+    long getReplayTimeMillis();
+
+    /**
+     * @return the wall clock time of the last replay of saved log messages, in milliseconds
+     */
+    long getLastReplayTimeMillis();
+
+    /**
+     * @return the number of log calls on the LogService that have been timed
+     */
+    long getDelegateCallCount();
+
+    /**
+     * @return the median time of the log calls on the LogService, in nanoseconds
+     */
+    long getDelegateLatencyP50Nanos();
+
+    /**
+     * @return the 99th percentile of the time of the log calls on the LogService, in nanoseconds
+     */
+    long getDelegateLatencyP99Nanos();
+
+    /**
+     * @return the 99.9th percentile of the time of the log calls on the LogService, in nanoseconds
+     */
+    long getDelegateLatencyP999Nanos();
+
+    /**
+     * @return the longest time of a log call on the LogService, in nanoseconds
+     */
+    long getDelegateLatencyMaxNanos();
+
+}
@@ -1,5 +1,5 @@
 /*
- * Copyright 2017-2024 Steinar Bang
+ * Copyright 2017-2026 Steinar Bang
  *
  * Licensed under the Apache License, Version 2.0 (the "License");
  * you may not use this file except in compliance with the License.
@@ -15,19 +15,33 @@
  */
 package no.priv.bang.osgi.service.adapters.logservice;
 
-import java.util.ArrayList;
-import java.util.List;
+import static no.priv.bang.osgi.service.adapters.logservice.internal.SavedLogMessages.LEVEL_AND_MESSAGE;
+import static no.priv.bang.osgi.service.adapters.logservice.internal.SavedLogMessages.WITH_EXCEPTION;
+import static no.priv.bang.osgi.service.adapters.logservice.internal.SavedLogMessages.WITH_SERVICE_REFERENCE;
+import static no.priv.bang.osgi.service.adapters.logservice.internal.SavedLogMessages.WITH_SUPPLIER;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.concurrent.Executor;
+import java.util.function.Supplier;
 
 import org.osgi.framework.Bundle;
 import org.osgi.framework.ServiceReference;
+import org.osgi.service.log.LogEntry;
+import org.osgi.service.log.LogLevel;
+import org.osgi.service.log.LogListener;
 import org.osgi.service.log.LogService;
 import org.osgi.service.log.Logger;
 
-import no.priv.bang.osgi.service.adapters.logservice.internal.SavedLevelAndMessage;
-import no.priv.bang.osgi.service.adapters.logservice.internal.SavedLevelAndMessageAndExceptn;
-import no.priv.bang.osgi.service.adapters.logservice.internal.SavedLogMessage;
-import no.priv.bang.osgi.service.adapters.logservice.internal.SavedServiceReferenceAndLevelAndMessage;
-import no.priv.bang.osgi.service.adapters.logservice.internal.SavedServiceReferenceAndLevelAndMessageAndExceptn;
+import no.priv.bang.osgi.service.adapters.logservice.internal.AsyncLogDispatcher;
+import no.priv.bang.osgi.service.adapters.logservice.internal.LogMessageDeduplicator;
+import no.priv.bang.osgi.service.adapters.logservice.internal.LogServiceAdapterLogger;
+import no.priv.bang.osgi.service.adapters.logservice.internal.LoggerCache;
+import no.priv.bang.osgi.service.adapters.logservice.internal.ReplayExecutors;
+import no.priv.bang.osgi.service.adapters.logservice.internal.SavedLogMessages;
+import no.priv.bang.osgi.service.adapters.logservice.internal.TimedLogService;
 
 /***
  * An adapter for {@link LogService}.  An instance of this class can be created
@@ -41,18 +55,526 @@ import no.priv.bang.osgi.service.adapters.logservice.internal.SavedServiceRefere
  * {@link #setLogService(LogService)} method.  The first thing that
  * happens, is that any saved log messages are written to the {@link LogService}.
  *
+ * <p>The time and the thread of the original log call are saved with
+ * each log message.  The {@link LogService} API has no way of setting
+ * the time of a log message, so the original time is lost when the saved
+ * log messages are written to the {@link LogService}.  But if the injected
+ * {@link LogService} also implements {@link LogListener}, the saved log
+ * messages are instead given to {@link LogListener#logged(LogEntry)} as
+ * {@link LogEntry} objects holding the original time and thread.
+ *
  * After the saved log messages have been set to the {@link LogService},
  * new log messages will be passed on to the wrapped {@link LogService}
  * without any caching taking place.
  *
+ * <p>The saved log messages are kept in a lock-free queue, so that
+ * several threads (e.g. several DS components being activated in
+ * parallel) can log through the same adapter before the
+ * {@link LogService} has been injected, without contending on a lock
+ * and without losing log messages.  The queue doesn't create an object
+ * for each saved log message: the levels, messages, exceptions, service
+ * references, times and thread names are stored in arrays that are
+ * allocated in chunks as the queue fills up, and that are freed when
+ * the saved log messages have been replayed.  The buffer, and the cache of
+ * the loggers from the getLogger methods, are only created when first used,
+ * so an adapter that has a {@link LogService} set before logging anything
+ * takes little memory.
+ *
+ * <p>The number of saved log messages is limited by a buffer capacity
+ * (default {@value #DEFAULT_BUFFER_CAPACITY}), so that a LogService
+ * that never shows up won't make the saved messages fill up the heap.
+ * What happens to new log messages when the buffer is full, is decided
+ * by the {@link OverflowPolicy} (default {@link OverflowPolicy#DROP_OLDEST}).
+ * The buffer capacity and overflow policy are usually set when the adapter
+ * is created, e.g.
+ * <pre>
+ * private final LogServiceAdapter logservice = new LogServiceAdapter()
+ *     .setBufferCapacity(1000)
+ *     .setOverflowPolicy(OverflowPolicy.KEEP_WARNINGS_AND_ERRORS);
+ * </pre>
+ * If they are changed while log messages are being saved, the log messages
+ * saved so far are moved to the new buffer, and logging threads wait while
+ * the log messages are moved.
+ *
+ * <p>With {@link OverflowPolicy#SPILL_TO_JOURNAL} the log messages that
+ * don't fit in the buffer are written to a memory-mapped journal file
+ * in the directory set with {@link #setJournalDirectory(Path)}.  The
+ * journal is replayed after the buffer, and is then deleted.
+ *
+ * <p>The adapter goes through three states: saving log messages until a
+ * {@link LogService} is set, replaying the saved log messages, and finally
+ * passing log messages directly to the {@link LogService}.  The state changes
+ * are made with compare-and-set on a control word that also counts the threads
+ * that are in the middle of saving a log message, so that no log message is
+ * saved after the last replay, and log messages from a thread are logged in
+ * the order they were logged.  When the adapter passes log messages directly
+ * to the {@link LogService}, a log call costs a volatile read of the
+ * {@link LogService}, a volatile read of the metrics (see
+ * {@link #setMetricsEnabled(boolean)}), and no locking.
+ *
+ * <p>When the {@link LogService} goes away, e.g. in the unbind method of a
+ * dynamic reference, {@link #setLogService(LogService)} can be called with
+ * null, or {@link #unsetLogService(LogService)} can be called with the
+ * {@link LogService} going away.  The adapter then goes back to saving log
+ * messages, and the saved log messages are replayed to the next
+ * {@link LogService} that is set.  Loggers from the getLogger methods
+ * keep working across these changes.
+ *
+ * <p>By default the saved log messages are replayed in the thread calling
+ * {@link #setLogService(LogService)}, i.e. in the DS bind callback.  With
+ * {@link #setAsynchronousReplay(boolean)} or {@link #setReplayExecutor(Executor)}
+ * the replay is handed over to a background thread.  Log messages received
+ * while the replay is in progress are saved and logged after the replayed
+ * messages.
+ *
+ * <p>The log methods taking a {@link Supplier} only build the log message if
+ * {@link #isLevelEnabled(int)} is true for the level.  Before a {@link LogService}
+ * is injected, the {@link Supplier} is saved, and is called when it is replayed
+ * to a {@link LogService} that has the level enabled.
+ *
+ * <p>With {@link #setAsynchronousDispatch(boolean)}, log messages are passed
+ * to the {@link LogService} from a dispatch thread, so that logging threads
+ * don't have to wait for a slow {@link LogService} (e.g. one writing to files).
+ * Call {@link #close()} from the deactivate method of the component, so that
+ * the log messages waiting for the dispatch thread aren't lost when the bundle
+ * is stopped.
+ *
+ * <p>With {@link #setMetricsEnabled(boolean)}, the adapter counts the log
+ * messages it handles, and measures the buffer and the replays, in a
+ * {@link LogAdapterMetrics} that can be registered as an MBean.  With
+ * {@link #setDelegateLatencyRecorded(boolean)}, the time of each log call on
+ * the {@link LogService} is recorded in a histogram in the metrics, to show
+ * when the {@link LogService} is what makes logging slow.
+ *
  * @author Steinar Bang
  *
  */
 @SuppressWarnings("rawtypes")
 public class LogServiceAdapter implements LogService {
 
-    private LogService logservice;
-    private List<SavedLogMessage> savedLogMessages = new ArrayList<>();
+    /**
+     * The default maximum number of log messages saved while waiting for a {@link LogService}.
+     */
+    public static final int DEFAULT_BUFFER_CAPACITY = 100000;
+
+    /**
+     * The default time a logging thread will wait for room in a full buffer
+     * when the overflow policy is {@link OverflowPolicy#BLOCK}.
+     */
+    public static final Duration DEFAULT_BLOCK_TIMEOUT = Duration.ofMillis(100);
+
+    /**
+     * The default size of the ring buffer used in asynchronous dispatch mode.
+     */
+    public static final int DEFAULT_DISPATCH_QUEUE_CAPACITY = 8192;
+
+    /**
+     * System property holding the default for {@link #setMinimumBufferedLevel(int)}.
+     * The value can be "error", "warning", "info", "debug", or the number of the log level.
+     */
+    public static final String MINIMUM_BUFFERED_LEVEL_PROPERTY = "no.priv.bang.osgi.service.adapters.logservice.minimumBufferedLevel";
+
+    // The states of the adapter, kept in the lowest bits of the control word
+    private static final int BUFFERING = 0;
+    private static final int DRAINING = 1;
+    private static final int LIVE = 2;
+    private static final int REPLACING = 3; // A config setter is moving the saved log messages to a new buffer
+    private static final int STATE_MASK = 3;
+    // The remaining bits of the control word count the threads adding to savedLogMessages
+    private static final int ONE_WRITER = 4;
+
+    private static final VarHandle CONTROL;
+    private static final VarHandle SAVED_LOG_MESSAGES;
+    static {
+        try {
+            var lookup = MethodHandles.lookup();
+            CONTROL = lookup.findVarHandle(LogServiceAdapter.class, "control", int.class);
+            SAVED_LOG_MESSAGES = lookup.findVarHandle(LogServiceAdapter.class, "savedLogMessages", SavedLogMessages.class);
+        } catch (ReflectiveOperationException e) {
+            throw new ExceptionInInitializerError(e);
+        }
+    }
+
+    private volatile int control = BUFFERING;
+    private volatile LogService logservice; // Only set in state LIVE, when all saved log messages have been sent
+    private volatile LogService injectedLogService;
+    private final Object stateLock = new Object();
+    private final Object replayLock = new Object();
+    private Executor replayExecutor;
+    private boolean asynchronousDispatch;
+    private int dispatchQueueCapacity = DEFAULT_DISPATCH_QUEUE_CAPACITY;
+    private WaitStrategy waitStrategy = WaitStrategy.SLEEPING;
+    private volatile AsyncLogDispatcher dispatcher;
+    private boolean closed;
+    private LogMessageDeduplicator deduplicator;
+    private volatile LogAdapterMetrics metrics;
+    private boolean delegateLatencyRecorded;
+    private volatile LoggerCache loggerCache; // Created by the first getLogger call
+    private volatile Logger logServiceLogger; // Created by the first level check
+    private int minimumBufferedLevel = parseLevel(System.getProperty(MINIMUM_BUFFERED_LEVEL_PROPERTY), LOG_DEBUG);
+    private volatile SavedLogMessages savedLogMessages; // Created when the first log message is saved
+    // The settings of the buffer, only changed while no thread is adding to savedLogMessages
+    private int bufferCapacity = DEFAULT_BUFFER_CAPACITY;
+    private OverflowPolicy overflowPolicy = OverflowPolicy.DROP_OLDEST;
+    private Duration blockTimeout = DEFAULT_BLOCK_TIMEOUT;
+    private Path journalDirectory;
+
+    /**
+     * Set the maximum number of log messages saved while waiting for a
+     * {@link LogService} to be injected.
+     *
+     * @param capacity the maximum number of saved log messages, must be at least 1
+     * @return this adapter
+     */
+    public LogServiceAdapter setBufferCapacity(int capacity) {
+        if (capacity < 1) {
+            throw new IllegalArgumentException("Capacity of saved log message buffer must be at least 1, was " + capacity);
+        }
+
+        changeBufferSettings(() -> bufferCapacity = capacity);
+        return this;
+    }
+
+    /**
+     * Set what to do with log messages when the buffer for saved
+     * log messages is full.
+     *
+     * @param overflowPolicy the policy deciding what to drop from a full buffer
+     * @return this adapter
+     */
+    public LogServiceAdapter setOverflowPolicy(OverflowPolicy overflowPolicy) {
+        changeBufferSettings(() -> this.overflowPolicy = overflowPolicy);
+        return this;
+    }
+
+    /**
+     * Set the maximum time a logging thread will wait for room in a full
+     * buffer, before dropping the log message, when the overflow policy is
+     * {@link OverflowPolicy#BLOCK}.
+     *
+     * @param blockTimeout maximum time to wait for room in the buffer
+     * @return this adapter
+     */
+    public LogServiceAdapter setBlockTimeout(Duration blockTimeout) {
+        changeBufferSettings(() -> this.blockTimeout = blockTimeout);
+        return this;
+    }
+
+    /**
+     * Set the directory where the journal file is created when the overflow
+     * policy is {@link OverflowPolicy#SPILL_TO_JOURNAL}.  The default is the
+     * data area of the bundle holding this class when running in an OSGi
+     * framework, and the directory for temporary files otherwise.
+     *
+     * @param journalDirectory the directory of the journal file, or null for the default directory
+     * @return this adapter
+     */
+    public LogServiceAdapter setJournalDirectory(Path journalDirectory) {
+        changeBufferSettings(() -> this.journalDirectory = journalDirectory);
+        return this;
+    }
+
+    /**
+     * Replay saved log messages in a background thread when a {@link LogService}
+     * is set.  The background thread is a virtual thread on JVMs that have virtual
+     * threads, and a daemon thread on older JVMs.
+     *
+     * @param asynchronousReplay if true replay saved log messages in a background thread, if false replay in the thread setting the {@link LogService}
+     * @return this adapter
+     */
+    public LogServiceAdapter setAsynchronousReplay(boolean asynchronousReplay) {
+        return setReplayExecutor(asynchronousReplay ? ReplayExecutors.getDefaultExecutor() : null);
+    }
+
+    /**
+     * Set the {@link Executor} that will replay saved log messages when a
+     * {@link LogService} is set.
+     *
+     * @param replayExecutor the executor running the replay, or null to replay in the thread setting the {@link LogService}
+     * @return this adapter
+     */
+    public LogServiceAdapter setReplayExecutor(Executor replayExecutor) {
+        this.replayExecutor = replayExecutor;
+        return this;
+    }
+
+    /**
+     * Pass log messages to the {@link LogService} from a dispatch thread,
+     * instead of from the thread calling the log method.  The log messages are
+     * put into a ring buffer that is read by the dispatch thread.  When the
+     * ring buffer is full, logging threads wait for the dispatch thread to make
+     * room.  The dispatch thread parks when idle, is stopped when the
+     * {@link LogService} is unset, and a new one is started when the next
+     * {@link LogService} is set.  Call {@link #close()} when the adapter is
+     * no longer used, e.g. in the deactivate method of a DS component, to pass
+     * on the log messages in the ring buffer and stop the dispatch thread for good.
+     *
+     * <p>Only the log methods of the adapter are dispatched asynchronously.
+     * Loggers from the getLogger methods log directly to loggers from the
+     * {@link LogService}.
+     *
+     * @param asynchronousDispatch if true pass on log messages from a dispatch thread
+     * @return this adapter
+     */
+    public LogServiceAdapter setAsynchronousDispatch(boolean asynchronousDispatch) {
+        this.asynchronousDispatch = asynchronousDispatch;
+        return this;
+    }
+
+    /**
+     * Set the size of the ring buffer used in asynchronous dispatch mode.
+     *
+     * @param dispatchQueueCapacity the number of log messages that can wait for the dispatch thread, rounded up to a power of two, at most 2^30
+     * @return this adapter
+     */
+    public LogServiceAdapter setDispatchQueueCapacity(int dispatchQueueCapacity) {
+        if (dispatchQueueCapacity < 1) {
+            throw new IllegalArgumentException("Capacity of asynchronous dispatch queue must be at least 1, was " + dispatchQueueCapacity);
+        }
+
+        if (dispatchQueueCapacity > AsyncLogDispatcher.MAXIMUM_CAPACITY) {
+            throw new IllegalArgumentException("Capacity of asynchronous dispatch queue must be at most " + AsyncLogDispatcher.MAXIMUM_CAPACITY + ", was " + dispatchQueueCapacity);
+        }
+
+        this.dispatchQueueCapacity = dispatchQueueCapacity;
+        return this;
+    }
+
+    /**
+     * Set how the dispatch thread waits for new log messages in asynchronous
+     * dispatch mode (default {@link WaitStrategy#SLEEPING}).
+     *
+     * @param waitStrategy how the dispatch thread waits
+     * @return this adapter
+     */
+    public LogServiceAdapter setWaitStrategy(WaitStrategy waitStrategy) {
+        this.waitStrategy = waitStrategy;
+        return this;
+    }
+
+    /**
+     * Set the least severe log level that is saved while waiting for a
+     * {@link LogService}.  Log messages with a less severe level are dropped
+     * without being saved, so that e.g. debug messages that would never be
+     * logged in production don't take up memory before a {@link LogService}
+     * has been injected.  Log messages passed directly to a {@link LogService}
+     * aren't affected.
+     *
+     * <p>The default is {@link LogService#LOG_DEBUG} (save all log messages), unless the
+     * system property {@value #MINIMUM_BUFFERED_LEVEL_PROPERTY} is set.
+     *
+     * @param minimumBufferedLevel one of {@link LogService#LOG_ERROR}, {@link LogService#LOG_WARNING}, {@link LogService#LOG_INFO} or {@link LogService#LOG_DEBUG}
+     * @return this adapter
+     */
+    public LogServiceAdapter setMinimumBufferedLevel(int minimumBufferedLevel) {
+        this.minimumBufferedLevel = minimumBufferedLevel;
+        return this;
+    }
+
+    static int parseLevel(String level, int defaultLevel) {
+        if (level == null) {
+            return defaultLevel;
+        }
+
+        switch (level.trim().toLowerCase()) {
+            case "error":
+                return LOG_ERROR;
+            case "warn":
+            case "warning":
+                return LOG_WARNING;
+            case "info":
+                return LOG_INFO;
+            case "debug":
+            case "trace":
+                return LOG_DEBUG;
+            default:
+                try {
+                    return Integer.parseInt(level.trim());
+                } catch (NumberFormatException e) {
+                    return defaultLevel;
+                }
+        }
+    }
+
+    private boolean isSavedLevel(int level) {
+        return level <= minimumBufferedLevel;
+    }
+
+    /**
+     * Collapse repeats of a log message within a time window into a single
+     * log message, followed by a log message with the number of repeats.
+     * A log message is a repeat if it has the same level, message text and
+     * exception class as a log message logged earlier in the time window.
+     * The number of repeats is logged as "message (repeated N times)" when
+     * the log message is logged again after the time window, and by
+     * {@link #flush()} and {@link #close()}.
+     *
+     * <p>The log messages seen are kept in a small fixed-size hash table,
+     * so a log message that is pushed out of the table by other log messages
+     * will be logged again before its time window has ended.
+     *
+     * @param window the time window for repeats, or null or zero to not collapse repeats
+     * @return this adapter
+     */
+    public LogServiceAdapter setDeduplicationWindow(Duration window) {
+        deduplicator = window == null || window.isZero() || window.isNegative() ? null : new LogMessageDeduplicator(window.toNanos(), this::logRepeatSummary);
+        return this;
+    }
+
+    /**
+     * Count the log messages per level, track the number of saved log messages,
+     * and time the replays of saved log messages, in a {@link LogAdapterMetrics}.
+     * The metrics are off by default, and then cost a volatile read and a null check
+     * per log call.  Log calls on the loggers from the getLogger methods are only
+     * counted when the level is enabled in the logger of the {@link LogService}.
+     *
+     * @param metricsEnabled if true, keep metrics, if false, drop the metrics
+     * @return this adapter
+     */
+    public LogServiceAdapter setMetricsEnabled(boolean metricsEnabled) {
+        if (!metricsEnabled) {
+            metrics = null;
+            setDelegateLatencyRecorded(false);
+        } else if (metrics == null) {
+            metrics = new LogAdapterMetrics(this::savedLogMessageCount, this::droppedLogMessageCount);
+        }
+
+        return this;
+    }
+
+    /**
+     * Record the time of each log call on the {@link LogService}, and on the
+     * loggers of the {@link LogService}, in a histogram in the metrics, that is
+     * read with {@link LogAdapterMetrics#getDelegateLatency()} or as MBean
+     * attributes.  Enabling this also enables metrics.
+     *
+     * <p>The {@link LogService} is wrapped in a timing {@link LogService} only
+     * while this is enabled, so that logging without latency recording costs
+     * nothing extra.  With latency recording, each log call costs two reads of
+     * {@link System#nanoTime()} and an uncontended write to a histogram bucket
+     * of the logging thread.
+     *
+     * @param delegateLatencyRecorded if true, record the latencies
+     * @return this adapter
+     */
+    public LogServiceAdapter setDelegateLatencyRecorded(boolean delegateLatencyRecorded) {
+        if (delegateLatencyRecorded) {
+            setMetricsEnabled(true);
+        }
+
+        synchronized (stateLock) {
+            this.delegateLatencyRecorded = delegateLatencyRecorded;
+            var service = injectedLogService;
+            if (state(control) == LIVE && service != null) {
+                logservice = live(service); // Add or remove the timing
+            }
+        }
+
+        return this;
+    }
+
+    /**
+     * @return the metrics of this adapter, or null if metrics aren't enabled
+     */
+    public LogAdapterMetrics getMetrics() {
+        return metrics;
+    }
+
+    private int savedLogMessageCount() {
+        var saved = savedLogMessages;
+        return saved != null ? saved.size() : 0;
+    }
+
+    private long droppedLogMessageCount() {
+        var saved = savedLogMessages;
+        return saved != null ? saved.getDroppedCount() : 0;
+    }
+
+    private void countLogCall(int level) {
+        var currentMetrics = metrics;
+        if (currentMetrics != null) {
+            currentMetrics.logged(level);
+        }
+    }
+
+    /**
+     * Count a log call on a logger of the {@link LogService}, if the level is
+     * enabled in the logger.  The level is only checked when there are metrics.
+     */
+    private void countLoggerCall(Logger delegate, LogLevel logLevel) {
+        var currentMetrics = metrics;
+        if (currentMetrics != null && LogServiceAdapterLogger.isEnabled(delegate, logLevel)) {
+            currentMetrics.logged(LogServiceAdapterLogger.logServiceLevel(logLevel));
+        }
+    }
+
+    private void logRepeatSummary(int level, String message, long repeats) {
+        var summary = message + " (repeated " + repeats + " times)";
+        var service = logservice;
+        if (service != null) {
+            service.log(level, summary);
+        } else {
+            saveOrSend(LEVEL_AND_MESSAGE, null, level, summary, null);
+        }
+    }
+
+    /**
+     * Change the settings of the buffer of saved log messages, and if there
+     * is a buffer, replace it with a buffer with the new settings, moving the
+     * log messages saved so far to the new buffer.
+     *
+     * <p>The replay lock is taken first, like the replaying thread does, so
+     * that no replay is reading the old buffer.  Threads starting to save a log
+     * message wait while the state is {@link #REPLACING}, and the threads already
+     * adding to the old buffer are waited for, so that no log message is added
+     * to the old buffer after it has been emptied, and no buffer is created
+     * with the old settings.
+     */
+    private void changeBufferSettings(Runnable change) {
+        synchronized (replayLock) {
+            synchronized (stateLock) {
+                var state = state(control);
+                if (state == LIVE) {
+                    // Nothing is saved when live, a buffer with the new settings is created when going back to saving
+                    change.run();
+                    savedLogMessages = null;
+                    return;
+                }
+
+                setState(REPLACING);
+                try {
+                    while ((control & ~STATE_MASK) != 0) {
+                        Thread.onSpinWait(); // Wait for the threads adding to the old buffer
+                    }
+
+                    change.run();
+                    var oldSavedLogMessages = savedLogMessages;
+                    if (oldSavedLogMessages != null) {
+                        var newSavedLogMessages = new SavedLogMessages(bufferCapacity, overflowPolicy, blockTimeout, journalDirectory);
+                        oldSavedLogMessages.transferTo(newSavedLogMessages);
+                        savedLogMessages = newSavedLogMessages;
+                    }
+                } finally {
+                    setState(state);
+                }
+            }
+        }
+    }
+
+    /**
+     * The buffer of saved log messages, created by the first thread saving a
+     * log message.  Only called by threads counted as adding to the buffer in
+     * the control word, so the buffer settings don't change while it is created.
+     */
+    private SavedLogMessages savedLogMessages() {
+        var saved = savedLogMessages;
+        if (saved == null) {
+            SAVED_LOG_MESSAGES.compareAndSet(this, null, new SavedLogMessages(bufferCapacity, overflowPolicy, blockTimeout, journalDirectory));
+            saved = savedLogMessages;
+        }
+
+        return saved;
+    }
 
     /***
      * Passes this log message on to {@link LogService#log(int, String)} of
@@ -61,10 +583,16 @@ public class LogServiceAdapter implements LogService {
      */
     @Override
     public void log(int level, String message) {
-        if (logservice != null) {
-            logservice.log(level, message);
+        if (deduplicator != null && deduplicator.isRepeated(level, message, null)) {
+            return;
+        }
+
+        var service = logservice;
+        if (service != null) {
+            countLogCall(level);
+            service.log(level, message);
         } else {
-            savedLogMessages.add(new SavedLevelAndMessage(level, message));
+            saveOrSend(LEVEL_AND_MESSAGE, null, level, message, null);
         }
     }
 
@@ -75,10 +603,16 @@ public class LogServiceAdapter implements LogService {
      */
     @Override
     public void log(int level, String message, Throwable exception) {
-        if (logservice != null) {
-            logservice.log(level, message, exception);
+        if (deduplicator != null && deduplicator.isRepeated(level, message, exception)) {
+            return;
+        }
+
+        var service = logservice;
+        if (service != null) {
+            countLogCall(level);
+            service.log(level, message, exception);
         } else {
-            savedLogMessages.add(new SavedLevelAndMessageAndExceptn(level, message, exception));
+            saveOrSend(WITH_EXCEPTION, null, level, message, exception);
         }
     }
 
@@ -89,10 +623,16 @@ public class LogServiceAdapter implements LogService {
      */
     @Override
     public void log(ServiceReference sr, int level, String message) {
-        if (logservice != null) {
-            logservice.log(sr, level, message);
+        if (deduplicator != null && deduplicator.isRepeated(level, message, null)) {
+            return;
+        }
+
+        var service = logservice;
+        if (service != null) {
+            countLogCall(level);
+            service.log(sr, level, message);
         } else {
-            savedLogMessages.add(new SavedServiceReferenceAndLevelAndMessage(sr, level, message));
+            saveOrSend(WITH_SERVICE_REFERENCE, sr, level, message, null);
         }
     }
 
@@ -103,10 +643,104 @@ public class LogServiceAdapter implements LogService {
      */
     @Override
     public void log(ServiceReference sr, int level, String message, Throwable exception) {
-        if (logservice != null) {
-            logservice.log(sr, level, message, exception);
+        if (deduplicator != null && deduplicator.isRepeated(level, message, exception)) {
+            return;
+        }
+
+        var service = logservice;
+        if (service != null) {
+            countLogCall(level);
+            service.log(sr, level, message, exception);
         } else {
-            savedLogMessages.add(new SavedServiceReferenceAndLevelAndMessageAndExceptn(sr, level, message, exception));
+            saveOrSend(WITH_SERVICE_REFERENCE | WITH_EXCEPTION, sr, level, message, exception);
+        }
+    }
+
+    /**
+     * Check if log messages of a level will be logged.  When a {@link LogService}
+     * is set, this asks the logger of the {@link LogService} that the
+     * {@link LogService} log methods log to.  When there is no {@link LogService},
+     * this tells if log messages of the level are saved.
+     *
+     * @param level one of {@link LogService#LOG_ERROR}, {@link LogService#LOG_WARNING}, {@link LogService#LOG_INFO} or {@link LogService#LOG_DEBUG}
+     * @return true if log messages of the level will be logged
+     */
+    public boolean isLevelEnabled(int level) {
+        return SavedLogMessages.isLevelEnabled(logServiceLogger(), level);
+    }
+
+    /**
+     * The logger that tells which levels are enabled for the log methods of
+     * the adapter.  If two threads create it at the same time, both loggers work.
+     */
+    private Logger logServiceLogger() {
+        var logger = logServiceLogger;
+        if (logger == null) {
+            logger = new LogServiceAdapterLogger(this::saveOrSend, this::countLoggerCall, this::liveLogService, this::isSavedLevel, null, "LogService", Logger.class);
+            logServiceLogger = logger;
+        }
+
+        return logger;
+    }
+
+    /***
+     * Like {@link #log(int, String)}, but only builds the message if the level is
+     * enabled.  If no {@link LogService} has been injected, the {@link Supplier} is
+     * saved, and is only called when it is replayed to a {@link LogService} that
+     * has the level enabled.  With a deduplication window, the message is built
+     * when the level is saved, also before a {@link LogService} is injected,
+     * so that repeats can be found from the message text.
+     *
+     * @param level the log level
+     * @param message builds the log message
+     */
+    public void log(int level, Supplier<String> message) {
+        if (logservice == null && deduplicator == null) {
+            saveOrSend(LEVEL_AND_MESSAGE | WITH_SUPPLIER, null, level, message, null); // Built when replayed
+        } else if (isLevelEnabled(level)) {
+            log(level, message.get());
+        }
+    }
+
+    /***
+     * Like {@link #log(int, String, Throwable)}, but only builds the message if the level is
+     * enabled.
+     *
+     * @see #log(int, Supplier)
+     */
+    public void log(int level, Supplier<String> message, Throwable exception) {
+        if (logservice == null && deduplicator == null) {
+            saveOrSend(WITH_EXCEPTION | WITH_SUPPLIER, null, level, message, exception);
+        } else if (isLevelEnabled(level)) {
+            log(level, message.get(), exception);
+        }
+    }
+
+    /***
+     * Like {@link #log(ServiceReference, int, String)}, but only builds the message if the level is
+     * enabled.
+     *
+     * @see #log(int, Supplier)
+     */
+    public void log(ServiceReference sr, int level, Supplier<String> message) {
+        if (logservice == null && deduplicator == null) {
+            saveOrSend(WITH_SERVICE_REFERENCE | WITH_SUPPLIER, sr, level, message, null);
+        } else if (isLevelEnabled(level)) {
+            log(sr, level, message.get());
+        }
+    }
+
+    /***
+     * Like {@link #log(ServiceReference, int, String, Throwable)}, but only builds the message if the level is
+     * enabled.
+     *
+     * @see #log(int, Supplier)
+     */
+    public void log(ServiceReference sr, int level, Supplier<String> message, Throwable exception) {
+        if (logservice == null && deduplicator == null) {
+            saveOrSend(WITH_SERVICE_REFERENCE | WITH_EXCEPTION | WITH_SUPPLIER, sr, level, message, exception);
+        } else if (isLevelEnabled(level)) {
+            log(sr, level, message.get(), exception);
         }
     }
 
@@ -115,47 +749,382 @@ public class LogServiceAdapter implements LogService {
      *
      * <p>If this LogServiceAdapter have saved log messages, the saved log messages will
      * be sent to the logservice before it start passing on new log messages.
+     * If a replay executor has been set, the saved log messages are sent from the
+     * executor, and this method returns without waiting for them to be sent.
+     * If saved log messages were dropped because the buffer was full, a warning
+     * with the number of dropped messages for each log level is logged after
+     * the saved log messages.
      *
      * @param logservice A {@code LogService} that will receive any saved log messages, and then get all new log messages logged on this class.
      */
     public void setLogService(LogService logservice) {
-        this.logservice = logservice;
-        sendSavedLogMessagesToRealLogService(logservice);
+        if (logservice == null) {
+            AsyncLogDispatcher removedDispatcher;
+            synchronized (stateLock) {
+                removedDispatcher = removeLogService();
+            }
+
+            stopDispatching(removedDispatcher);
+            return;
+        }
+
+        synchronized (stateLock) {
+            if (injectedLogService != logservice) {
+                injectedLogService = logservice;
+                loggerCache = null; // Drop the loggers of the old LogService
+            } else if (state(control) == DRAINING) {
+                return; // The replay to this LogService has already been started
+            }
+
+            if (state(control) == LIVE) {
+                // Nothing saved, just swap the LogService
+                this.logservice = live(logservice);
+                return;
+            }
+
+            setState(DRAINING);
+        }
+
+        if (replayExecutor == null) {
+            sendSavedLogMessagesToRealLogService(logservice);
+        } else {
+            replayExecutor.execute(() -> sendSavedLogMessagesToRealLogService(logservice));
+        }
+    }
+
+    /**
+     * Stop passing log messages to a {@link LogService} and start saving log
+     * messages again, but only if the {@link LogService} is the one currently set.
+     * Intended for the unbind method of a dynamic service reference, where the
+     * bind of a new {@link LogService} may come before the unbind of the old one.
+     *
+     * @param logservice the {@link LogService} that is going away
+     */
+    public void unsetLogService(LogService logservice) {
+        AsyncLogDispatcher removedDispatcher = null;
+        synchronized (stateLock) {
+            if (injectedLogService == logservice) {
+                removedDispatcher = removeLogService();
+            }
+        }
+
+        stopDispatching(removedDispatcher);
+    }
+
+    /**
+     * Start saving log messages again, and take the dispatcher of asynchronous
+     * dispatch mode out of use, so that a new dispatcher is started for the next
+     * {@link LogService}.  Called with the state lock held.
+     *
+     * @return the dispatcher taken out of use, or null if there was none
+     */
+    private AsyncLogDispatcher removeLogService() {
+        if (injectedLogService != null) {
+            injectedLogService = null;
+            loggerCache = null; // Drop the loggers of the old LogService
+        }
+
+        logservice = null;
+        setState(BUFFERING);
+        var removedDispatcher = dispatcher;
+        dispatcher = null;
+        return removedDispatcher;
+    }
+
+    /**
+     * Log the number of repeats of log messages collapsed by deduplication,
+     * pass on the log messages waiting for the dispatch thread to the
+     * {@link LogService} that is going away, and stop the dispatch thread.
+     * Called without the state lock held, since the dispatch thread may be
+     * in a {@link LogService} that logs back into this adapter.
+     */
+    private void stopDispatching(AsyncLogDispatcher removedDispatcher) {
+        if (deduplicator != null) {
+            deduplicator.flushRepeats();
+        }
+
+        if (removedDispatcher != null) {
+            removedDispatcher.close();
+        }
+    }
+
+    /**
+     * Save a log message if the adapter isn't live, and send it to the
+     * {@link LogService} if the adapter went live after the caller
+     * found no live {@link LogService}.
+     *
+     * <p>A thread adding to the saved log messages is counted in the control
+     * word for the duration of the add, so that the replaying thread won't go
+     * live while there are log messages on their way into the buffer.
+     */
+    private void saveOrSend(int kind, ServiceReference<?> sr, int level, Object message, Throwable exception) {
+        while (true) {
+            var c = control;
+            if (state(c) == REPLACING) {
+                Thread.onSpinWait(); // A config setter is moving the saved log messages to a new buffer
+            } else if (state(c) != LIVE) {
+                if (!isSavedLevel(level)) {
+                    return;
+                }
+
+                if (CONTROL.compareAndSet(this, c, c + ONE_WRITER)) {
+                    SavedLogMessages saved;
+                    try {
+                        saved = savedLogMessages();
+                        saved.add(kind, sr, level, message, exception);
+                    } finally {
+                        CONTROL.getAndAdd(this, -ONE_WRITER);
+                    }
+
+                    var currentMetrics = metrics;
+                    if (currentMetrics != null) {
+                        currentMetrics.logged(level);
+                        currentMetrics.saved(saved.size());
+                    }
+
+                    return;
+                }
+            } else {
+                var service = logservice;
+                if (service != null) {
+                    countLogCall(level);
+                    SavedLogMessages.replayToService(service, logServiceLogger(), kind, sr, level, message, exception);
+                    return;
+                }
+
+                // The replaying thread is sending the last saved messages
+                Thread.onSpinWait();
+            }
+        }
     }
 
     private void sendSavedLogMessagesToRealLogService(LogService log) {
-        if(log != null) {
-            for (var savedLogMessage : savedLogMessages) {
-                savedLogMessage.sendToService(log);
+        synchronized (replayLock) {
+            var replayStart = System.nanoTime();
+            while (injectedLogService == log) {
+                sendSavedLogMessages(log);
+                if (goLive(log)) {
+                    var currentMetrics = metrics;
+                    if (currentMetrics != null) {
+                        currentMetrics.replayFinished(System.nanoTime() - replayStart);
+                    }
+
+                    return;
+                }
+
+                // Threads are still adding saved log messages
+                Thread.yield();
+            }
+        }
+    }
+
+    private void sendSavedLogMessages(LogService log) {
+        var saved = savedLogMessages;
+        if (saved == null) {
+            return; // Nothing has been saved
+        }
+
+        var sent = saved.sendToService(log);
+        var currentMetrics = metrics;
+        if (currentMetrics != null) {
+            currentMetrics.replayed(sent);
+        }
+    }
+
+    /**
+     * Go from state DRAINING to state LIVE, unless there are threads
+     * adding to the saved log messages.
+     *
+     * @return true if the replay is finished, false if there are threads adding to the saved log messages
+     */
+    private boolean goLive(LogService log) {
+        synchronized (stateLock) {
+            if (injectedLogService != log) {
+                return true; // Another LogService was set, and its replay takes over
+            }
+
+            if (state(control) == LIVE) {
+                return true; // An earlier replay to the same LogService went live
+            }
+
+            if (!CONTROL.compareAndSet(this, DRAINING, LIVE)) {
+                return false;
             }
 
-            savedLogMessages.clear();
+            // Send messages saved after the last replay, and before the state was set to LIVE
+            sendSavedLogMessages(log);
+            var saved = savedLogMessages;
+            if (saved != null) {
+                saved.release();
+            }
+
+            logservice = live(log);
+            return true;
+        }
+    }
+
+    /**
+     * Find the {@link LogService} log messages are passed to when the adapter is
+     * live: the dispatcher in asynchronous dispatch mode, the LogService otherwise.
+     * When delegate latency is recorded, the LogService is wrapped in a timing LogService.
+     */
+    private LogService live(LogService log) {
+        var currentMetrics = metrics;
+        LogService target = delegateLatencyRecorded && currentMetrics != null ? new TimedLogService(log, currentMetrics.delegateLatencyHistogram()) : log;
+        if (!asynchronousDispatch || closed) {
+            return target;
+        }
+
+        var currentDispatcher = dispatcher;
+        if (currentDispatcher == null) {
+            currentDispatcher = new AsyncLogDispatcher(dispatchQueueCapacity, waitStrategy);
+            dispatcher = currentDispatcher;
+        }
+
+        return currentDispatcher.setTarget(target);
+    }
+
+    /**
+     * The {@link LogService} the adapter currently passes log messages to, or null
+     * if the adapter is saving log messages.
+     */
+    private LogService liveLogService() {
+        var service = logservice;
+        return service instanceof AsyncLogDispatcher ? ((AsyncLogDispatcher) service).getTarget() : service;
+    }
+
+    /**
+     * Log the number of repeats of log messages collapsed by deduplication,
+     * and in asynchronous dispatch mode, wait until the log messages logged
+     * before this method was called, have been passed on to the
+     * {@link LogService}.
+     */
+    public void flush() {
+        if (deduplicator != null) {
+            deduplicator.flushRepeats();
+        }
+
+        var currentDispatcher = dispatcher;
+        if (currentDispatcher != null) {
+            currentDispatcher.flush();
+        }
+    }
+
+    /**
+     * Log the number of repeats of log messages collapsed by deduplication,
+     * and in asynchronous dispatch mode, pass on the log messages waiting for
+     * the dispatch thread, and stop the dispatch thread.  Log messages logged
+     * after this are passed directly to the {@link LogService}.  Intended for
+     * the deactivate method of a DS component.
+     */
+    public void close() {
+        AsyncLogDispatcher currentDispatcher;
+        synchronized (stateLock) {
+            closed = true;
+            currentDispatcher = dispatcher;
+        }
+
+        stopDispatching(currentDispatcher);
+    }
+
+    private void setState(int state) {
+        var c = control;
+        while (!CONTROL.compareAndSet(this, c, (c & ~STATE_MASK) | state)) {
+            c = control;
         }
     }
 
+    private static int state(int c) {
+        return c & STATE_MASK;
+    }
+
+    /**
+     * Get a {@link Logger} that can be used whether a {@link LogService} has
+     * been injected or not.  When a {@link LogService} is set, the logger
+     * delegates to a logger from that {@link LogService}.  When there is no
+     * {@link LogService}, the format and arguments of the log calls are saved
+     * together with the other saved log messages, and the log calls are made
+     * again on a logger from the {@link LogService} when the saved log messages
+     * are replayed.
+     */
     @Override
     public Logger getLogger(String name) {
-        return logservice.getLogger(name);
+        return getLogger(null, name, Logger.class);
     }
 
+    /**
+     * Get a {@link Logger} named after a class.
+     *
+     * @see #getLogger(String)
+     */
     @Override
     public Logger getLogger(Class<?> clazz) {
-        return logservice.getLogger(clazz);
+        return getLogger(null, clazz.getName(), Logger.class);
     }
 
+    /**
+     * Get a {@link Logger} or {@link org.osgi.service.log.FormatterLogger}.
+     *
+     * @see #getLogger(Bundle, String, Class)
+     */
     @Override
     public <L extends Logger> L getLogger(String name, Class<L> loggerType) {
-        return logservice.getLogger(name, loggerType);
+        return getLogger(null, name, loggerType);
     }
 
+    /**
+     * Get a {@link Logger} or {@link org.osgi.service.log.FormatterLogger} named after a class.
+     *
+     * @see #getLogger(Bundle, String, Class)
+     */
     @Override
     public <L extends Logger> L getLogger(Class<?> clazz, Class<L> loggerType) {
-        return logservice.getLogger(clazz, loggerType);
+        return getLogger(null, clazz.getName(), loggerType);
     }
 
+    /**
+     * Get a {@link Logger} or {@link org.osgi.service.log.FormatterLogger}
+     * that can be used whether a {@link LogService} has been injected or not.
+     * Other logger types are only supported when a {@link LogService} has been
+     * injected, and are then fetched directly from the {@link LogService}.
+     *
+     * <p>The loggers are cached by bundle, name and logger type, so getting a
+     * logger that has been gotten before doesn't create a new logger.  The cache
+     * is emptied when the {@link LogService} changes.
+     *
+     * @throws IllegalArgumentException if the logger type isn't supported
+     */
     @Override
     public <L extends Logger> L getLogger(Bundle bundle, String name, Class<L> loggerType) {
-        return logservice.getLogger(bundle, name, loggerType);
+        return loggerCache().getLogger(bundle, name, loggerType);
+    }
+
+    private LoggerCache loggerCache() {
+        var cache = loggerCache;
+        if (cache == null) {
+            synchronized (stateLock) {
+                cache = loggerCache;
+                if (cache == null) {
+                    cache = new LoggerCache(this::createLogger);
+                    loggerCache = cache;
+                }
+            }
+        }
+
+        return cache;
+    }
+
+    private <L extends Logger> L createLogger(Bundle bundle, String name, Class<L> loggerType) {
+        if (LogServiceAdapterLogger.isSupportedLoggerType(loggerType)) {
+            return loggerType.cast(new LogServiceAdapterLogger(this::saveOrSend, this::countLoggerCall, this::liveLogService, this::isSavedLevel, bundle, name, loggerType));
+        }
+
+        var service = injectedLogService;
+        if (service == null) {
+            throw new IllegalArgumentException("Logger type " + loggerType.getName() + " is only supported when a LogService has been injected");
+        }
+
+        return bundle != null ? service.getLogger(bundle, name, loggerType) : service.getLogger(name, loggerType);
     }
 
 }
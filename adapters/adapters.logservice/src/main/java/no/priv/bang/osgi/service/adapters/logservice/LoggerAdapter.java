@@ -1,5 +1,5 @@
 /*
- * Copyright 2021 Steinar Bang
+ * Copyright 2021-2026 Steinar Bang
  *
  * Licensed under the Apache License, Version 2.0 (the "License");
  * you may not use this file except in compliance with the License.
@@ -15,180 +15,534 @@
  */
 package no.priv.bang.osgi.service.adapters.logservice;
 
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.osgi.service.log.FormatterLogger;
+import org.osgi.service.log.LogLevel;
 import org.osgi.service.log.LogService;
 import org.osgi.service.log.Logger;
 import org.osgi.service.log.LoggerConsumer;
+import org.osgi.service.log.admin.LoggerAdmin;
+
+import no.priv.bang.osgi.service.adapters.logservice.internal.LogLevelsChangedLoggerAdmin;
+import no.priv.bang.osgi.service.adapters.logservice.internal.NullLogger;
 
+/**
+ * A {@link Logger} for a class that can be used whether a {@link LogService}
+ * has been set or not.
+ *
+ * <p>Before {@link #setLogService(LogService)} is called, the log calls are saved
+ * in a {@link LogServiceAdapter}, with the format and the arguments of each call,
+ * without formatting them.  When the {@link LogService} is set, the saved log calls
+ * are made again, in order, on the logger from the {@link LogService}, which
+ * only formats the log calls of the levels it has enabled.  After that, the log
+ * calls go directly to the logger from the {@link LogService}.
+ *
+ * <p>With {@link #setSaveLogCallsWithoutLogService(boolean)} set to false, log
+ * calls made when there is no {@link LogService} are discarded instead, by a
+ * shared logger that has all levels disabled and does nothing, so that they
+ * cost no more than the call.
+ *
+ * <p>The {@link LogServiceAdapter} saving the log calls, and its logger, are
+ * only created by the first log call made without a {@link LogService}, so
+ * that an adapter that has its {@link LogService} set before logging takes
+ * little memory.  The logger is published in a volatile field, that is only
+ * null until the first log call creates it.
+ *
+ * <p>By default the enabled levels aren't cached: each level check and log
+ * call goes to the logger, so changes of the log levels are seen at once.
+ * With {@link #setCacheEnabledLevels(boolean)}, the levels enabled in the
+ * logger are kept in a bitmask in the adapter, so that checking a level, and
+ * log calls of levels that aren't enabled, cost a few volatile reads and a branch,
+ * instead of a call to the logger.  The bitmask is only computed again when
+ * {@link #logLevelsChanged()} has been called.  This is done when a
+ * {@link LogService} is set, and after each change of log levels made through
+ * the {@link LoggerAdmin} returned by {@link #notifyingLoggerAdmin(LoggerAdmin)},
+ * so code changing the log levels should use that wrapper.  Log levels changed
+ * in other ways, e.g. by the log service reading its configuration, are only
+ * seen by the caching adapters after a call to {@link #logLevelsChanged()}.
+ *
+ * <p>{@link #getFormatterLogger()} gives a {@link FormatterLogger} for the same
+ * class, that uses printf format strings instead of "{}" placeholders, and
+ * that follows the {@link LogService} and the settings of this adapter.  Its log
+ * calls are saved together with the log calls of this adapter, so that they
+ * are replayed in the order they were made.
+ *
+ * @author Steinar Bang
+ *
+ */
 public class LoggerAdapter implements Logger {
 
-    private Logger logger;
+    private static final AtomicInteger logLevelsVersion = new AtomicInteger(1);
+    // The enabled levels are kept in the lowest bits, the version of the log levels in the highest bits
+    private static final long TRACE_ENABLED = 1L << LogLevel.TRACE.ordinal();
+    private static final long DEBUG_ENABLED = 1L << LogLevel.DEBUG.ordinal();
+    private static final long INFO_ENABLED = 1L << LogLevel.INFO.ordinal();
+    private static final long WARN_ENABLED = 1L << LogLevel.WARN.ordinal();
+    private static final long ERROR_ENABLED = 1L << LogLevel.ERROR.ordinal();
+    private static final long ALL_ENABLED = TRACE_ENABLED | DEBUG_ENABLED | INFO_ENABLED | WARN_ENABLED | ERROR_ENABLED;
+    private static final long STALE = 0; // Version 0 is never used
+
+    private final Class<? extends Logger> loggerType;
+    private volatile LogServiceAdapter savedLogCalls; // Created by the first log call saved, or shared with a companion adapter
+    private volatile Logger logger; // Null until a log call has needed a logger saving log calls
+    private volatile long enabledLevels = STALE;
+    private volatile boolean cacheEnabledLevels; // Read without locking by the log methods
+    private boolean saveLogCallsWithoutLogService = true;
+    private LogService logService;
     private Class<?> clazz;
+    private FormatterLoggerAdapter formatterLogger;
 
     public LoggerAdapter(Class<?> clazz) {
+        this(clazz, Logger.class, null);
+    }
+
+    LoggerAdapter(Class<?> clazz, Class<? extends Logger> loggerType, LogServiceAdapter savedLogCalls) {
         this.clazz = clazz;
+        this.loggerType = loggerType;
+        this.savedLogCalls = savedLogCalls;
     }
 
+    /**
+     * Set the {@link LogService} to log to, replaying the log calls saved before
+     * a {@link LogService} was set.  Setting null goes back to saving the log calls.
+     *
+     * @param logService the {@link LogService} to log to, or null
+     */
     public void setLogService(LogService logService) {
-        logger = logService.getLogger(clazz);
+        var adapter = savedLogCalls;
+        if (adapter != null) {
+            adapter.setLogService(logService);
+        }
+
+        useLogService(logService);
+        logLevelsChanged(); // Other adapters may use the same loggers, with the levels of the new LogService
+        var created = savedLogCalls;
+        if (created != adapter) {
+            created.setLogService(logService); // Created by a log call while the LogService was being set
+        }
+    }
+
+    /**
+     * The {@link LogServiceAdapter} saving the log calls, created if this is the
+     * first time it is needed.  If a {@link LogService} is set, it is passed on
+     * to the new {@link LogServiceAdapter}.
+     */
+    private synchronized LogServiceAdapter savedLogCalls() {
+        if (savedLogCalls == null) {
+            var adapter = new LogServiceAdapter();
+            if (logService != null) {
+                adapter.setLogService(logService);
+            }
+
+            savedLogCalls = adapter;
+        }
+
+        return savedLogCalls;
+    }
+
+    void useLogService(LogService logService) {
+        FormatterLoggerAdapter companion;
+        synchronized (this) {
+            this.logService = logService;
+            logger = logService != null ? loggerWithLogService(logService) : loggerWithoutLogService();
+            enabledLevels = STALE;
+            companion = formatterLogger;
+        }
+
+        if (companion != null) {
+            companion.useLogService(logService);
+        }
+    }
+
+    /**
+     * Get a {@link FormatterLogger} for the class of this adapter, that follows
+     * the {@link LogService} and the settings of this adapter.
+     *
+     * @return the same {@link FormatterLogger} each time
+     */
+    public synchronized FormatterLogger getFormatterLogger() {
+        if (formatterLogger == null) {
+            var companion = new FormatterLoggerAdapter(clazz, savedLogCalls());
+            companion.setCacheEnabledLevels(cacheEnabledLevels);
+            companion.setSaveLogCallsWithoutLogService(saveLogCallsWithoutLogService);
+            companion.useLogService(logService);
+            formatterLogger = companion;
+        }
+
+        return formatterLogger;
+    }
+
+    /**
+     * Decide what happens to log calls made when there is no {@link LogService}.
+     *
+     * @param saveLogCalls if true (the default) the log calls are saved and replayed when a {@link LogService} is set, if false the log calls are discarded
+     * @return this adapter
+     */
+    public synchronized LoggerAdapter setSaveLogCallsWithoutLogService(boolean saveLogCalls) {
+        saveLogCallsWithoutLogService = saveLogCalls;
+        if (logService == null) {
+            logger = loggerWithoutLogService();
+            enabledLevels = STALE;
+        }
+
+        if (formatterLogger != null) {
+            formatterLogger.setSaveLogCallsWithoutLogService(saveLogCalls);
+        }
+
+        return this;
+    }
+
+    private Logger loggerWithLogService(LogService logService) {
+        var adapter = savedLogCalls;
+        if (adapter != null && adapter.getMetrics() != null) {
+            return adapter.getLogger(clazz, loggerType); // Counts the log calls before passing them on
+        }
+
+        return loggerType == Logger.class ? logService.getLogger(clazz) : logService.getLogger(clazz, loggerType);
+    }
+
+    private Logger loggerWithoutLogService() {
+        return saveLogCallsWithoutLogService ? null : NullLogger.getInstance(); // The logger saving log calls is created by the first log call
+    }
+
+    /**
+     * Keep the levels enabled in the logger in the adapter, instead of asking
+     * the logger on each level check and log call.  Only use this if the log
+     * levels are changed through {@link #notifyingLoggerAdmin(LoggerAdmin)},
+     * or if {@link #logLevelsChanged()} is called when the log levels change,
+     * since the cached levels aren't updated until then.
+     *
+     * @param cacheEnabledLevels if true, cache the enabled levels
+     * @return this adapter
+     */
+    public synchronized LoggerAdapter setCacheEnabledLevels(boolean cacheEnabledLevels) {
+        this.cacheEnabledLevels = cacheEnabledLevels;
+        enabledLevels = STALE;
+        if (formatterLogger != null) {
+            formatterLogger.setCacheEnabledLevels(cacheEnabledLevels);
+        }
+
+        return this;
+    }
+
+    /**
+     * Keep metrics of the log calls of this adapter, and of the log calls saved
+     * while there is no {@link LogService}.  With metrics, log calls go through
+     * a logger that counts them, also when a {@link LogService} is set.
+     *
+     * @param metricsEnabled if true, keep metrics
+     * @return this adapter
+     * @see LogServiceAdapter#setMetricsEnabled(boolean)
+     */
+    public LoggerAdapter setMetricsEnabled(boolean metricsEnabled) {
+        savedLogCalls().setMetricsEnabled(metricsEnabled);
+        refreshLogger();
+        return this;
+    }
+
+    /**
+     * Record the time of each log call on the logger of the {@link LogService}
+     * in the metrics of this adapter.  Enabling this also enables metrics.
+     *
+     * @param delegateLatencyRecorded if true, record the latencies
+     * @return this adapter
+     * @see LogServiceAdapter#setDelegateLatencyRecorded(boolean)
+     */
+    public LoggerAdapter setDelegateLatencyRecorded(boolean delegateLatencyRecorded) {
+        savedLogCalls().setDelegateLatencyRecorded(delegateLatencyRecorded);
+        refreshLogger();
+        return this;
+    }
+
+    /**
+     * @return the metrics of this adapter, or null if metrics aren't enabled
+     */
+    public LogAdapterMetrics getMetrics() {
+        var adapter = savedLogCalls;
+        return adapter != null ? adapter.getMetrics() : null;
+    }
+
+    private void refreshLogger() {
+        LogService currentLogService;
+        synchronized (this) {
+            currentLogService = logService;
+        }
+
+        useLogService(currentLogService);
+    }
+
+    /**
+     * Tell all {@link LoggerAdapter} instances that log levels have changed, so
+     * that the adapters caching the enabled levels check the levels again.
+     */
+    public static void logLevelsChanged() {
+        logLevelsVersion.updateAndGet(version -> version == Integer.MAX_VALUE ? 1 : version + 1);
+    }
+
+    /**
+     * Wrap the {@link LoggerAdmin} of the log service, so that changes of log
+     * levels made through its {@link org.osgi.service.log.admin.LoggerContext}s
+     * call {@link #logLevelsChanged()} when they are done.
+     *
+     * @param loggerAdmin the {@link LoggerAdmin} of the log service
+     * @return a {@link LoggerAdmin} passing everything on to loggerAdmin
+     */
+    public static LoggerAdmin notifyingLoggerAdmin(LoggerAdmin loggerAdmin) {
+        return new LogLevelsChangedLoggerAdmin(loggerAdmin);
     }
 
     private Logger getLogger() {
+        var current = logger;
+        return current != null ? current : savingLogger();
+    }
+
+    /**
+     * Create the logger saving log calls in the {@link LogServiceAdapter}, on the
+     * first log call made without a {@link LogService}.
+     */
+    private synchronized Logger savingLogger() {
+        if (logger == null) {
+            logger = savedLogCalls().getLogger(clazz, loggerType);
+        }
+
         return logger;
     }
 
+    /**
+     * Check if a level is enabled when the enabled levels are cached.  When
+     * they aren't cached, the check is only a volatile read, and the
+     * log call goes to the logger, which decides.
+     */
+    private boolean isEnabled(long level) {
+        return !cacheEnabledLevels || (enabledLevels() & level) != 0;
+    }
+
+    private long enabledLevels() {
+        var levels = enabledLevels;
+        return (int) (levels >>> 32) == logLevelsVersion.get() ? levels : refreshEnabledLevels();
+    }
+
+    private synchronized long refreshEnabledLevels() {
+        var version = logLevelsVersion.get();
+        var levels = cacheEnabledLevels ? levelsEnabledIn(getLogger()) : ALL_ENABLED; // When not cached, the logger decides
+        levels |= (long) version << 32;
+        enabledLevels = levels;
+        return levels;
+    }
+
+    private static long levelsEnabledIn(Logger logger) {
+        return (logger.isTraceEnabled() ? TRACE_ENABLED : 0) |
+            (logger.isDebugEnabled() ? DEBUG_ENABLED : 0) |
+            (logger.isInfoEnabled() ? INFO_ENABLED : 0) |
+            (logger.isWarnEnabled() ? WARN_ENABLED : 0) |
+            (logger.isErrorEnabled() ? ERROR_ENABLED : 0);
+    }
+
     @Override
     public String getName() {
-        return getLogger().getName();
+        var current = logger;
+        return current != null && current != NullLogger.getInstance() ? current.getName() : clazz.getName();
     }
 
     @Override
     public boolean isTraceEnabled() {
-        return getLogger().isTraceEnabled();
+        return cacheEnabledLevels ? (enabledLevels() & TRACE_ENABLED) != 0 : getLogger().isTraceEnabled();
     }
 
     @Override
     public void trace(String message) {
-        getLogger().trace(message);
+        if (isEnabled(TRACE_ENABLED)) {
+            getLogger().trace(message);
+        }
     }
 
     @Override
     public void trace(String format, Object arg) {
-        getLogger().trace(format, arg);
+        if (isEnabled(TRACE_ENABLED)) {
+            getLogger().trace(format, arg);
+        }
     }
 
     @Override
     public void trace(String format, Object arg1, Object arg2) {
-        getLogger().trace(format, arg1, arg2);
+        if (isEnabled(TRACE_ENABLED)) {
+            getLogger().trace(format, arg1, arg2);
+        }
     }
 
     @Override
     public void trace(String format, Object... arguments) {
-        getLogger().trace(format, arguments);
+        if (isEnabled(TRACE_ENABLED)) {
+            getLogger().trace(format, arguments);
+        }
     }
 
     @Override
     public <E extends Exception> void trace(LoggerConsumer<E> consumer) throws E {
-        getLogger().trace(consumer);
+        if (isEnabled(TRACE_ENABLED)) {
+            getLogger().trace(consumer);
+        }
     }
 
     @Override
     public boolean isDebugEnabled() {
-        return getLogger().isDebugEnabled();
+        return cacheEnabledLevels ? (enabledLevels() & DEBUG_ENABLED) != 0 : getLogger().isDebugEnabled();
     }
 
     @Override
     public void debug(String message) {
-        getLogger().debug(message);
+        if (isEnabled(DEBUG_ENABLED)) {
+            getLogger().debug(message);
+        }
     }
 
     @Override
     public void debug(String format, Object arg) {
-        getLogger().debug(format, arg);
+        if (isEnabled(DEBUG_ENABLED)) {
+            getLogger().debug(format, arg);
+        }
     }
 
     @Override
     public void debug(String format, Object arg1, Object arg2) {
-        getLogger().debug(format, arg1, arg2);
+        if (isEnabled(DEBUG_ENABLED)) {
+            getLogger().debug(format, arg1, arg2);
+        }
     }
 
     @Override
     public void debug(String format, Object... arguments) {
-        getLogger().debug(format, arguments);
+        if (isEnabled(DEBUG_ENABLED)) {
+            getLogger().debug(format, arguments);
+        }
     }
 
     @Override
     public <E extends Exception> void debug(LoggerConsumer<E> consumer) throws E {
-        getLogger().debug(consumer);
+        if (isEnabled(DEBUG_ENABLED)) {
+            getLogger().debug(consumer);
+        }
     }
 
     @Override
     public boolean isInfoEnabled() {
-        return getLogger().isInfoEnabled();
+        return cacheEnabledLevels ? (enabledLevels() & INFO_ENABLED) != 0 : getLogger().isInfoEnabled();
     }
 
     @Override
     public void info(String message) {
-        getLogger().info(message);
+        if (isEnabled(INFO_ENABLED)) {
+            getLogger().info(message);
+        }
     }
 
     @Override
     public void info(String format, Object arg) {
-        getLogger().info(format, arg);
+        if (isEnabled(INFO_ENABLED)) {
+            getLogger().info(format, arg);
+        }
     }
 
     @Override
     public void info(String format, Object arg1, Object arg2) {
-        getLogger().info(format, arg1, arg2);
+        if (isEnabled(INFO_ENABLED)) {
+            getLogger().info(format, arg1, arg2);
+        }
     }
 
     @Override
     public void info(String format, Object... arguments) {
-        getLogger().info(format, arguments);
+        if (isEnabled(INFO_ENABLED)) {
+            getLogger().info(format, arguments);
+        }
     }
 
     @Override
     public <E extends Exception> void info(LoggerConsumer<E> consumer) throws E {
-        getLogger().info(consumer);
+        if (isEnabled(INFO_ENABLED)) {
+            getLogger().info(consumer);
+        }
     }
 
     @Override
     public boolean isWarnEnabled() {
-        return getLogger().isWarnEnabled();
+        return cacheEnabledLevels ? (enabledLevels() & WARN_ENABLED) != 0 : getLogger().isWarnEnabled();
     }
 
     @Override
     public void warn(String message) {
-        getLogger().warn(message);
+        if (isEnabled(WARN_ENABLED)) {
+            getLogger().warn(message);
+        }
     }
 
     @Override
     public void warn(String format, Object arg) {
-        getLogger().warn(format, arg);
+        if (isEnabled(WARN_ENABLED)) {
+            getLogger().warn(format, arg);
+        }
     }
 
     @Override
     public void warn(String format, Object arg1, Object arg2) {
-        getLogger().warn(format, arg1, arg2);
+        if (isEnabled(WARN_ENABLED)) {
+            getLogger().warn(format, arg1, arg2);
+        }
     }
 
     @Override
     public void warn(String format, Object... arguments) {
-        getLogger().warn(format, arguments);
+        if (isEnabled(WARN_ENABLED)) {
+            getLogger().warn(format, arguments);
+        }
     }
 
     @Override
     public <E extends Exception> void warn(LoggerConsumer<E> consumer) throws E {
-        getLogger().warn(consumer);
+        if (isEnabled(WARN_ENABLED)) {
+            getLogger().warn(consumer);
+        }
     }
 
     @Override
     public boolean isErrorEnabled() {
-        return getLogger().isErrorEnabled();
+        return cacheEnabledLevels ? (enabledLevels() & ERROR_ENABLED) != 0 : getLogger().isErrorEnabled();
     }
 
     @Override
     public void error(String message) {
-        getLogger().error(message);
+        if (isEnabled(ERROR_ENABLED)) {
+            getLogger().error(message);
+        }
     }
 
     @Override
     public void error(String format, Object arg) {
-        getLogger().error(format, arg);
+        if (isEnabled(ERROR_ENABLED)) {
+            getLogger().error(format, arg);
+        }
     }
 
     @Override
     public void error(String format, Object arg1, Object arg2) {
-        getLogger().error(format, arg1, arg2);
+        if (isEnabled(ERROR_ENABLED)) {
+            getLogger().error(format, arg1, arg2);
+        }
     }
 
     @Override
     public void error(String format, Object... arguments) {
-        getLogger().error(format, arguments);
+        if (isEnabled(ERROR_ENABLED)) {
+            getLogger().error(format, arguments);
+        }
     }
 
     @Override
     public <E extends Exception> void error(LoggerConsumer<E> consumer) throws E {
-        getLogger().error(consumer);
+        if (isEnabled(ERROR_ENABLED)) {
+            getLogger().error(consumer);
+        }
     }
 
     @Override
@@ -0,0 +1,69 @@
+/*
+ * Copyright 2026 Steinar Bang
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package no.priv.bang.osgi.service.adapters.logservice;
+
+/**
+ * What a {@link LogServiceAdapter} should do with a log message when
+ * the buffer holding log messages saved before a LogService has been
+ * injected, is full.
+ *
+ * <p>Dropped messages are counted per log level, and a summary of the
+ * dropped messages is logged after the saved messages have been
+ * replayed.
+ *
+ * @author Steinar Bang
+ *
+ */
+public enum OverflowPolicy {
+
+    /**
+     * Drop the oldest saved log message to make room for the new one.
+     */
+    DROP_OLDEST,
+
+    /**
+     * Drop the new log message and keep the saved ones.
+     */
+    DROP_NEWEST,
+
+    /**
+     * Drop new debug and info messages, and let new warnings and errors
+     * take the place of the oldest saved debug or info message.  When
+     * only warnings and errors are saved, new warnings and errors take
+     * the place of the oldest saved warning or error.
+     */
+    KEEP_WARNINGS_AND_ERRORS,
+
+    /**
+     * Make the logging thread wait for room in the buffer, and drop the
+     * new log message if no room has become available when the block
+     * timeout expires.
+     */
+    BLOCK,
+
+    /**
+     * Write new log messages to an append-only journal file when the
+     * buffer is full, and keep writing to the journal until the journal
+     * has been replayed, so that the heap usage stays flat however long
+     * it takes for a LogService to be injected.  The journal is deleted
+     * after it has been replayed.  Log messages are only dropped if the
+     * journal reaches its maximum size, or can't be written.
+     *
+     * @see LogServiceAdapter#setJournalDirectory(java.nio.file.Path)
+     */
+    SPILL_TO_JOURNAL,
+
+}
@@ -0,0 +1,61 @@
+/*
+ * Copyright 2026 Steinar Bang
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package no.priv.bang.osgi.service.adapters.logservice;
+
+/**
+ * How the dispatch thread of a {@link LogServiceAdapter} in asynchronous
+ * dispatch mode waits for new log messages, trading latency against CPU usage.
+ * Whatever the wait strategy, the dispatch thread parks when no log message
+ * has arrived for 10ms, so an idle adapter uses no CPU, and the dispatch
+ * thread is stopped when the {@link org.osgi.service.log.LogService} is
+ * unset or the adapter is closed.
+ *
+ * @see LogServiceAdapter#setAsynchronousDispatch(boolean)
+ *
+ * @author Steinar Bang
+ *
+ */
+public enum WaitStrategy {
+
+    /**
+     * Spin without giving up the CPU.  Lowest latency, but keeps a CPU
+     * core busy while log messages keep coming.
+     */
+    BUSY_SPIN,
+
+    /**
+     * Spin for a short while, and then yield the CPU to other threads
+     * between checks for new log messages.
+     */
+    YIELDING,
+
+    /**
+     * Spin, then yield, and then sleep for short periods between checks
+     * for new log messages.  Uses little CPU when idle.
+     */
+    SLEEPING,
+
+    /**
+     * Park the dispatch thread at once when there is no new log message,
+     * until a logging thread publishes one and unparks it.  Uses no CPU
+     * between log messages, but a log message arriving after a pause has to
+     * wait for the dispatch thread to wake up.  Log calls check whether the
+     * dispatch thread is parked with every wait strategy, so this only adds
+     * the unparking to the logging threads.
+     */
+    BLOCKING,
+
+}
@@ -0,0 +1,400 @@
+/*
+ * Copyright 2026 Steinar Bang
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package no.priv.bang.osgi.service.adapters.logservice.internal;
+
+import static no.priv.bang.osgi.service.adapters.logservice.internal.SavedLogMessages.LEVEL_AND_MESSAGE;
+import static no.priv.bang.osgi.service.adapters.logservice.internal.SavedLogMessages.WITH_EXCEPTION;
+import static no.priv.bang.osgi.service.adapters.logservice.internal.SavedLogMessages.WITH_SERVICE_REFERENCE;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+import org.osgi.framework.Bundle;
+import org.osgi.framework.ServiceReference;
+import org.osgi.service.log.LogService;
+import org.osgi.service.log.Logger;
+
+import no.priv.bang.osgi.service.adapters.logservice.WaitStrategy;
+
+/**
+ * A {@link LogService} that puts log messages into a preallocated ring
+ * buffer, and passes them on to a target {@link LogService} from a
+ * single dispatch thread, so that the logging threads don't have to
+ * wait for the target {@link LogService}.
+ *
+ * <p>The ring buffer works like the disruptor: logging threads claim a
+ * sequence number with compare-and-set on a cursor, write the fields of
+ * the log message into the preallocated arrays at the slot of the
+ * sequence number, and publish the slot by writing the lap of the sequence
+ * number into an availability array.  The dispatch thread reads the slots
+ * in sequence number order, waiting for each slot to become available
+ * using the {@link WaitStrategy}.  When no log message has arrived for
+ * {@link #PARK_AFTER_IDLE_NANOS}, the dispatch thread parks until a logging
+ * thread wakes it up, whatever the wait strategy, so that an idle dispatcher
+ * uses no CPU.  When the ring buffer is full, logging threads wait for the
+ * dispatch thread to make room.
+ *
+ * <p>The dispatch thread is started when the first target is set, and
+ * stopped by {@link #close()}, after passing on all log messages in the ring
+ * buffer.  After {@link #close()}, log messages are passed directly to the
+ * target.
+ */
+public class AsyncLogDispatcher implements LogService {
+
+    static final String DISPATCH_THREAD_NAME = "LogServiceAdapter dispatch";
+    public static final int MAXIMUM_CAPACITY = 1 << 30; // The largest power of two array size
+    static final int SPIN_TRIES = 100;
+    static final int YIELD_TRIES = 100;
+    static final long SLEEP_NANOS = 100000;
+    static final long PARK_AFTER_IDLE_NANOS = 10000000;
+    private static final VarHandle AVAILABLE = MethodHandles.arrayElementVarHandle(int[].class);
+
+    private final WaitStrategy waitStrategy;
+    private final int mask;
+    private final int indexShift;
+    private final int[] available;
+    private final byte[] kinds;
+    private final byte[] levels;
+    private final ServiceReference<?>[] servicereferences;
+    private final String[] messages;
+    private final Throwable[] exceptions;
+    private final AtomicLong cursor = new AtomicLong(-1);
+    private final AtomicLong dispatched = new AtomicLong(-1);
+    private volatile long cachedDispatched = -1;
+    private volatile LogService target;
+    private volatile Thread dispatchThread;
+    private volatile boolean running;
+    private volatile boolean closed;
+    private volatile boolean dispatchThreadWaiting;
+
+    /**
+     * Create a dispatcher with a ring buffer of a given size.
+     *
+     * @param capacity the size of the ring buffer, rounded up to a power of two, at most {@link #MAXIMUM_CAPACITY}
+     * @param waitStrategy how the dispatch thread waits for new log messages
+     */
+    public AsyncLogDispatcher(int capacity, WaitStrategy waitStrategy) {
+        if (capacity < 1) {
+            throw new IllegalArgumentException("Capacity of asynchronous dispatch queue must be at least 1, was " + capacity);
+        }
+
+        if (capacity > MAXIMUM_CAPACITY) {
+            throw new IllegalArgumentException("Capacity of asynchronous dispatch queue must be at most " + MAXIMUM_CAPACITY + ", was " + capacity);
+        }
+
+        this.waitStrategy = waitStrategy;
+        var size = capacity == 1 ? 1 : Integer.highestOneBit(capacity - 1) << 1;
+        mask = size - 1;
+        indexShift = Integer.numberOfTrailingZeros(size);
+        available = new int[size];
+        for (var i = 0; i < size; ++i) {
+            available[i] = -1;
+        }
+
+        kinds = new byte[size];
+        levels = new byte[size];
+        servicereferences = new ServiceReference<?>[size];
+        messages = new String[size];
+        exceptions = new Throwable[size];
+    }
+
+    public int getCapacity() {
+        return mask + 1;
+    }
+
+    public WaitStrategy getWaitStrategy() {
+        return waitStrategy;
+    }
+
+    public LogService getTarget() {
+        return target;
+    }
+
+    /**
+     * Set the {@link LogService} log messages are passed to, and start the
+     * dispatch thread if it isn't running.  Log messages in the ring buffer
+     * that haven't been passed on yet, will be passed to the new target.
+     *
+     * @param target the {@link LogService} receiving the log messages
+     * @return this dispatcher
+     */
+    public synchronized AsyncLogDispatcher setTarget(LogService target) {
+        this.target = target;
+        if (!running && !closed) {
+            running = true;
+            var thread = new Thread(this::dispatch, DISPATCH_THREAD_NAME);
+            thread.setDaemon(true);
+            dispatchThread = thread;
+            thread.start();
+        }
+
+        return this;
+    }
+
+    /**
+     * Wait until all log messages put into the ring buffer before this
+     * method was called, have been passed on to the target.
+     */
+    public void flush() {
+        var last = cursor.get();
+        var counter = 0;
+        while (dispatched.get() < last && running) {
+            counter = backOff(counter);
+        }
+    }
+
+    /**
+     * Pass on the log messages in the ring buffer to the target and stop
+     * the dispatch thread.  Log messages logged after this, are passed
+     * directly to the target.
+     */
+    public void close() {
+        Thread thread;
+        synchronized (this) {
+            closed = true;
+            running = false;
+            thread = dispatchThread;
+        }
+
+        if (thread != null) {
+            LockSupport.unpark(thread);
+        }
+
+        dispatchRemaining();
+    }
+
+    /**
+     * Pass on log messages published after the dispatch thread has stopped,
+     * in the calling thread.
+     */
+    private synchronized void dispatchRemaining() {
+        var thread = dispatchThread;
+        if (thread != null && thread != Thread.currentThread()) {
+            try {
+                thread.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
+
+        while (dispatched.get() < cursor.get()) {
+            var next = dispatched.get() + 1;
+            while (!isAvailable(next)) {
+                Thread.onSpinWait(); // Claimed by a logging thread that is about to publish it
+            }
+
+            dispatchSlot(next);
+        }
+    }
+
+    @Override
+    public void log(int level, String message) {
+        publish(LEVEL_AND_MESSAGE, null, level, message, null);
+    }
+
+    @Override
+    public void log(int level, String message, Throwable exception) {
+        publish(WITH_EXCEPTION, null, level, message, exception);
+    }
+
+    @SuppressWarnings("rawtypes")
+    @Override
+    public void log(ServiceReference sr, int level, String message) {
+        publish(WITH_SERVICE_REFERENCE, sr, level, message, null);
+    }
+
+    @SuppressWarnings("rawtypes")
+    @Override
+    public void log(ServiceReference sr, int level, String message, Throwable exception) {
+        publish(WITH_SERVICE_REFERENCE | WITH_EXCEPTION, sr, level, message, exception);
+    }
+
+    private void publish(int kind, ServiceReference<?> servicereference, int level, String message, Throwable exception) {
+        // The dispatch thread can't wait for room in the ring buffer, e.g. if the target logs through the adapter
+        var sequence = closed || Thread.currentThread() == dispatchThread ? -1 : claim();
+        if (sequence < 0) {
+            SavedLogMessages.sendToService(target, kind, servicereference, level, message, exception);
+            return;
+        }
+
+        var index = (int) sequence & mask;
+        kinds[index] = (byte) kind;
+        servicereferences[index] = servicereference;
+        levels[index] = (byte) Math.max(Byte.MIN_VALUE, Math.min(Byte.MAX_VALUE, level));
+        messages[index] = message;
+        exceptions[index] = exception;
+        AVAILABLE.setVolatile(available, index, (int) (sequence >>> indexShift));
+        if (dispatchThreadWaiting) {
+            LockSupport.unpark(dispatchThread);
+        }
+
+        if (closed) {
+            dispatchRemaining(); // The dispatch thread may have stopped before this log message was published
+        }
+    }
+
+    /**
+     * Claim the next sequence number, waiting for room in the ring buffer if needed.
+     *
+     * @return the claimed sequence number, or -1 if the dispatcher was closed while waiting for room
+     */
+    private long claim() {
+        var counter = 0;
+        while (true) {
+            var current = cursor.get();
+            var next = current + 1;
+            var wrapPoint = next - available.length;
+            if (wrapPoint > cachedDispatched) {
+                var lastDispatched = dispatched.get();
+                if (wrapPoint > lastDispatched) {
+                    if (closed) {
+                        return -1;
+                    }
+
+                    counter = backOff(counter);
+                    continue;
+                }
+
+                cachedDispatched = lastDispatched;
+            }
+
+            if (cursor.compareAndSet(current, next)) {
+                return next;
+            }
+        }
+    }
+
+    private boolean isAvailable(long sequence) {
+        return (int) AVAILABLE.getVolatile(available, (int) sequence & mask) == (int) (sequence >>> indexShift);
+    }
+
+    private void dispatch() {
+        var next = dispatched.get() + 1;
+        var counter = 0;
+        var idle = false;
+        var idleSince = 0L;
+        while (running || next <= cursor.get()) {
+            if (isAvailable(next)) {
+                dispatchSlot(next++);
+                counter = 0;
+                idle = false;
+            } else if (!idle) {
+                idle = true;
+                idleSince = System.nanoTime();
+                counter = waitForAvailable(next, counter);
+            } else if (System.nanoTime() - idleSince < PARK_AFTER_IDLE_NANOS) {
+                counter = waitForAvailable(next, counter);
+            } else {
+                parkUntilAvailable(next);
+            }
+        }
+    }
+
+    private void dispatchSlot(long sequence) {
+        var index = (int) sequence & mask;
+        var kind = kinds[index];
+        var servicereference = servicereferences[index];
+        var level = levels[index];
+        var message = messages[index];
+        var exception = exceptions[index];
+        servicereferences[index] = null;
+        messages[index] = null;
+        exceptions[index] = null;
+        try {
+            SavedLogMessages.sendToService(target, kind, servicereference, level, message, exception);
+        } catch (RuntimeException e) {
+            // A failing LogService must not stop the dispatching
+        }
+
+        dispatched.set(sequence);
+    }
+
+    private int waitForAvailable(long sequence, int counter) {
+        switch (waitStrategy) {
+            case BUSY_SPIN:
+                Thread.onSpinWait();
+                return counter;
+            case YIELDING:
+                if (counter < SPIN_TRIES) {
+                    Thread.onSpinWait();
+                    return counter + 1;
+                }
+
+                Thread.yield();
+                return counter;
+            case BLOCKING:
+                parkUntilAvailable(sequence);
+                return counter;
+            default:
+                return backOff(counter);
+        }
+    }
+
+    /**
+     * Park the dispatch thread until a logging thread publishes a log message
+     * and wakes it up, or the dispatcher is closed.
+     */
+    private void parkUntilAvailable(long sequence) {
+        dispatchThreadWaiting = true;
+        if (running && !isAvailable(sequence)) {
+            LockSupport.park(this);
+        }
+
+        dispatchThreadWaiting = false;
+    }
+
+    private static int backOff(int counter) {
+        if (counter < SPIN_TRIES) {
+            Thread.onSpinWait();
+        } else if (counter < SPIN_TRIES + YIELD_TRIES) {
+            Thread.yield();
+        } else {
+            LockSupport.parkNanos(SLEEP_NANOS);
+            return counter;
+        }
+
+        return counter + 1;
+    }
+
+    @Override
+    public Logger getLogger(String name) {
+        return target.getLogger(name);
+    }
+
+    @Override
+    public Logger getLogger(Class<?> clazz) {
+        return target.getLogger(clazz);
+    }
+
+    @Override
+    public <L extends Logger> L getLogger(String name, Class<L> loggerType) {
+        return target.getLogger(name, loggerType);
+    }
+
+    @Override
+    public <L extends Logger> L getLogger(Class<?> clazz, Class<L> loggerType) {
+        return target.getLogger(clazz, loggerType);
+    }
+
+    @Override
+    public <L extends Logger> L getLogger(Bundle bundle, String name, Class<L> loggerType) {
+        return target.getLogger(bundle, name, loggerType);
+    }
+
+}
@@ -0,0 +1,107 @@
+/*
+ * Copyright 2026 Steinar Bang
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package no.priv.bang.osgi.service.adapters.logservice.internal;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * A histogram of latencies in nanoseconds, with buckets on a logarithmic
+ * scale, like HdrHistogram: values below 32 have a bucket each, and above
+ * that each power of two is split into 16 buckets, so that a value is
+ * counted with a precision of about 6%, and all long values fit in 976
+ * buckets.
+ *
+ * <p>The buckets are split over a fixed number of stripes, and each recording
+ * thread counts in the stripe picked by its thread id, so that threads logging
+ * at the same time mostly increment different arrays.  The memory of the
+ * histogram is bounded by the number of stripes, however many threads record
+ * latencies, and a stripe is only created when a thread first counts in it.
+ * The stripes are summed by {@link #counts()}.
+ */
+public final class LatencyHistogram {
+
+    static final int SUB_BUCKET_BITS = 4;
+    static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    static final int EXACT_VALUES = 2 * SUB_BUCKETS;
+    public static final int BUCKET_COUNT = EXACT_VALUES + (Long.SIZE - 1 - SUB_BUCKET_BITS) * SUB_BUCKETS;
+    static final int STRIPES = 4; // A power of two
+
+    private final AtomicReferenceArray<AtomicLongArray> stripes = new AtomicReferenceArray<>(STRIPES);
+
+    /**
+     * Count a latency in the stripe of the current thread.
+     *
+     * @param nanos the latency in nanoseconds, negative values are counted as 0
+     */
+    public void record(long nanos) {
+        stripe().incrementAndGet(bucketIndex(nanos));
+    }
+
+    private AtomicLongArray stripe() {
+        var index = (int) Thread.currentThread().getId() & (STRIPES - 1);
+        var stripe = stripes.get(index);
+        if (stripe == null) {
+            stripes.compareAndSet(index, null, new AtomicLongArray(BUCKET_COUNT));
+            stripe = stripes.get(index);
+        }
+
+        return stripe;
+    }
+
+    /**
+     * Sum the counts of all stripes.
+     *
+     * @return the number of latencies counted in each bucket
+     */
+    public long[] counts() {
+        var counts = new long[BUCKET_COUNT];
+        for (var stripeIndex = 0; stripeIndex < STRIPES; ++stripeIndex) {
+            var stripe = stripes.get(stripeIndex);
+            if (stripe != null) {
+                for (var i = 0; i < BUCKET_COUNT; ++i) {
+                    counts[i] += stripe.get(i);
+                }
+            }
+        }
+
+        return counts;
+    }
+
+    static int bucketIndex(long value) {
+        if (value < EXACT_VALUES) {
+            return (int) Math.max(0, value);
+        }
+
+        var shift = Long.SIZE - 1 - Long.numberOfLeadingZeros(value) - SUB_BUCKET_BITS;
+        return EXACT_VALUES + (shift - 1) * SUB_BUCKETS + (int) ((value >>> shift) - SUB_BUCKETS);
+    }
+
+    /**
+     * The highest value counted in a bucket.
+     */
+    public static long highestValueInBucket(int index) {
+        if (index < EXACT_VALUES) {
+            return index;
+        }
+
+        var shift = (index - EXACT_VALUES) / SUB_BUCKETS + 1;
+        var subBucket = (long) (index - EXACT_VALUES) % SUB_BUCKETS + SUB_BUCKETS;
+        var highest = ((subBucket + 1) << shift) - 1;
+        return highest > 0 ? highest : Long.MAX_VALUE;
+    }
+
+}
@@ -0,0 +1,97 @@
+/*
+ * Copyright 2026 Steinar Bang
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package no.priv.bang.osgi.service.adapters.logservice.internal;
+
+import java.util.Map;
+
+import org.osgi.service.log.LogLevel;
+import org.osgi.service.log.admin.LoggerAdmin;
+import org.osgi.service.log.admin.LoggerContext;
+
+import no.priv.bang.osgi.service.adapters.logservice.LoggerAdapter;
+
+/**
+ * A {@link LoggerAdmin} that passes everything on to the {@link LoggerAdmin}
+ * of the log service, and that calls {@link LoggerAdapter#logLevelsChanged()}
+ * after the log levels of one of its {@link LoggerContext}s have been changed,
+ * so that the adapters caching enabled levels see the change on their next
+ * level check.
+ *
+ * @author Steinar Bang
+ *
+ */
+public class LogLevelsChangedLoggerAdmin implements LoggerAdmin {
+
+    private final LoggerAdmin loggerAdmin;
+
+    public LogLevelsChangedLoggerAdmin(LoggerAdmin loggerAdmin) {
+        this.loggerAdmin = loggerAdmin;
+    }
+
+    @Override
+    public LoggerContext getLoggerContext(String name) {
+        return new LogLevelsChangedLoggerContext(loggerAdmin.getLoggerContext(name));
+    }
+
+    static class LogLevelsChangedLoggerContext implements LoggerContext {
+
+        private final LoggerContext loggerContext;
+
+        LogLevelsChangedLoggerContext(LoggerContext loggerContext) {
+            this.loggerContext = loggerContext;
+        }
+
+        @Override
+        public String getName() {
+            return loggerContext.getName();
+        }
+
+        @Override
+        public LogLevel getEffectiveLogLevel(String name) {
+            return loggerContext.getEffectiveLogLevel(name);
+        }
+
+        @Override
+        public Map<String, LogLevel> getLogLevels() {
+            return loggerContext.getLogLevels();
+        }
+
+        @Override
+        public void setLogLevels(Map<String, LogLevel> logLevels) {
+            try {
+                loggerContext.setLogLevels(logLevels);
+            } finally {
+                LoggerAdapter.logLevelsChanged();
+            }
+        }
+
+        @Override
+        public void clear() {
+            try {
+                loggerContext.clear();
+            } finally {
+                LoggerAdapter.logLevelsChanged();
+            }
+        }
+
+        @Override
+        public boolean isEmpty() {
+            return loggerContext.isEmpty();
+        }
+
+    }
+
+}
@@ -0,0 +1,166 @@
+/*
+ * Copyright 2026 Steinar Bang
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package no.priv.bang.osgi.service.adapters.logservice.internal;
+
+import java.util.Objects;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Finds log messages that repeat a log message with the same level,
+ * message text and exception class within a time window.
+ *
+ * <p>The log messages seen are kept in a small fixed-size hash table,
+ * indexed by a hash of the level, message and exception class.  Each
+ * table entry counts the repeats of its log message.  When a table entry
+ * is replaced, because its time window has ended, or because another log
+ * message hashed to the same slot, a summary with the number of repeats
+ * is given to a {@link RepeatSummaryHandler}.
+ *
+ * <p>So that the repeats of a log message that stops repeating are reported
+ * soon after its time window has ended, and not only at the next flush, the
+ * table is swept for ended time windows by a log message checked more than
+ * a time window after the previous sweep.
+ *
+ * <p>The table is updated with compare-and-set, so that checking for a
+ * repeat doesn't take a lock, and only the thread winning the compare-and-set
+ * on the time of the next sweep does the sweep.
+ */
+public class LogMessageDeduplicator {
+
+    static final int TABLE_SIZE = 256;
+    private static final long CLOSED = Long.MIN_VALUE / 2;
+
+    private final long windowNanos;
+    private final RepeatSummaryHandler handler;
+    private final AtomicReferenceArray<Entry> table = new AtomicReferenceArray<>(TABLE_SIZE);
+    private final AtomicLong nextSweep;
+
+    /**
+     * Receives the number of times a log message was repeated and suppressed.
+     */
+    @FunctionalInterface
+    public interface RepeatSummaryHandler {
+        void repeated(int level, String message, long repeats);
+    }
+
+    /**
+     * A log message seen, extending {@link AtomicLong} to count the repeats
+     * without allocating a separate counter.
+     */
+    @SuppressWarnings("serial")
+    private static final class Entry extends AtomicLong {
+        final int level;
+        final String message;
+        final Class<?> exceptionClass;
+        final long windowStart;
+
+        Entry(int level, String message, Class<?> exceptionClass, long windowStart) {
+            this.level = level;
+            this.message = message;
+            this.exceptionClass = exceptionClass;
+            this.windowStart = windowStart;
+        }
+
+        boolean matches(int level, String message, Class<?> exceptionClass) {
+            return this.level == level && this.exceptionClass == exceptionClass && Objects.equals(this.message, message);
+        }
+    }
+
+    public LogMessageDeduplicator(long windowNanos, RepeatSummaryHandler handler) {
+        this.windowNanos = windowNanos;
+        this.handler = handler;
+        this.nextSweep = new AtomicLong(System.nanoTime() + windowNanos);
+    }
+
+    public long getWindowNanos() {
+        return windowNanos;
+    }
+
+    /**
+     * Check if a log message repeats a log message seen within the time window.
+     * A repeat is counted, and should not be logged.
+     *
+     * @return true if the log message is a repeat and should be dropped, false if it should be logged
+     */
+    public boolean isRepeated(int level, String message, Throwable exception) {
+        var exceptionClass = exception != null ? exception.getClass() : null;
+        var index = index(level, message, exceptionClass);
+        var now = System.nanoTime();
+        if (now - nextSweep.get() >= 0) {
+            sweepEndedWindows(now);
+        }
+
+        while (true) {
+            var entry = table.get(index);
+            if (entry != null && entry.matches(level, message, exceptionClass) && now - entry.windowStart < windowNanos) {
+                if (entry.incrementAndGet() > 0) {
+                    return true;
+                }
+
+                continue; // The entry was replaced by another thread, look again
+            }
+
+            if (table.compareAndSet(index, entry, new Entry(level, message, exceptionClass, now))) {
+                summarize(entry);
+                return false;
+            }
+        }
+    }
+
+    /**
+     * Give summaries of all repeated log messages to the handler, and forget
+     * the log messages seen.
+     */
+    public void flushRepeats() {
+        for (var i = 0; i < TABLE_SIZE; ++i) {
+            summarize(table.getAndSet(i, null));
+        }
+    }
+
+    /**
+     * Give summaries of the log messages whose time window has ended to the
+     * handler, and forget them, unless another thread is already sweeping.
+     */
+    private void sweepEndedWindows(long now) {
+        var scheduled = nextSweep.get();
+        if (now - scheduled < 0 || !nextSweep.compareAndSet(scheduled, now + windowNanos)) {
+            return;
+        }
+
+        for (var i = 0; i < TABLE_SIZE; ++i) {
+            var entry = table.get(i);
+            if (entry != null && now - entry.windowStart >= windowNanos && table.compareAndSet(i, entry, null)) {
+                summarize(entry);
+            }
+        }
+    }
+
+    private void summarize(Entry entry) {
+        if (entry != null) {
+            var repeats = entry.getAndSet(CLOSED);
+            if (repeats > 0) {
+                handler.repeated(entry.level, entry.message, repeats);
+            }
+        }
+    }
+
+    private static int index(int level, String message, Class<?> exceptionClass) {
+        var hash = 31 * (31 * level + Objects.hashCode(message)) + Objects.hashCode(exceptionClass);
+        return (hash ^ (hash >>> 16)) & (TABLE_SIZE - 1);
+    }
+
+}
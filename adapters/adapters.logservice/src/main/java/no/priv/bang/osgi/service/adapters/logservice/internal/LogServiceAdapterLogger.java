@@ -0,0 +1,708 @@
+/*
+ * Copyright 2026 Steinar Bang
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package no.priv.bang.osgi.service.adapters.logservice.internal;
+
+import java.util.IllegalFormatException;
+import java.util.function.IntPredicate;
+import java.util.function.Supplier;
+
+import org.osgi.framework.Bundle;
+import org.osgi.framework.ServiceReference;
+import org.osgi.service.log.FormatterLogger;
+import org.osgi.service.log.LogLevel;
+import org.osgi.service.log.LogService;
+import org.osgi.service.log.Logger;
+import org.osgi.service.log.LoggerConsumer;
+
+/**
+ * The {@link Logger} returned by the getLogger methods of a
+ * LogServiceAdapter.
+ *
+ * <p>When the LogServiceAdapter passes log messages directly to a
+ * {@link LogService}, this logger delegates to a logger from that
+ * {@link LogService}.  The delegate is looked up again when the
+ * {@link LogService} changes.  When there is no {@link LogService},
+ * e.g. before the first one is injected, or after it has been unbound, the
+ * format and arguments of the log call are saved, without formatting, in
+ * the LogServiceAdapter together with the log messages logged directly on
+ * the LogServiceAdapter.  The levels the LogServiceAdapter doesn't save are
+ * then reported as not enabled.
+ *
+ * <p>When the saved log messages are replayed, a saved log call is made
+ * again on a logger from the {@link LogService}, with the same name and
+ * log level, in the order it was logged relative to the other saved log
+ * messages.  The {@link LogService}'s logger then decides if the level is
+ * enabled, and does the formatting.  Note that the arguments are formatted
+ * at replay time, so arguments that are changed after the log call, are
+ * logged with their changed values.  A {@link LoggerConsumer} is saved the
+ * same way, and is only called at replay time, if the logger from the
+ * {@link LogService} has the level enabled.
+ *
+ * <p>A {@link Throwable} as the last argument, and a {@link ServiceReference}
+ * as the last argument or before the {@link Throwable}, are saved as the
+ * exception and service reference of the log message, and aren't used for
+ * placeholders when the log message has to be formatted here, e.g. because
+ * the {@link LogService} is a {@link org.osgi.service.log.LogListener}.
+ */
+public class LogServiceAdapterLogger implements FormatterLogger {
+
+    private final SavedLogMessageSink sink;
+    private final LogCallCounter logCallCounter;
+    private final Supplier<LogService> liveLogService;
+    private final IntPredicate savedLevel;
+    private final Bundle bundle;
+    private final String name;
+    private final Class<? extends Logger> loggerType;
+    private volatile Delegate currentDelegate;
+
+    /**
+     * Holds the {@link LogService} a delegate {@link Logger} was created from,
+     * so that both can be replaced with a single volatile write.
+     */
+    private static final class Delegate {
+        final LogService logservice;
+        final Logger logger;
+
+        Delegate(LogService logservice, Logger logger) {
+            this.logservice = logservice;
+            this.logger = logger;
+        }
+    }
+
+    /**
+     * Receives the log calls that are saved when there is no {@link LogService}.
+     */
+    @FunctionalInterface
+    public interface SavedLogMessageSink {
+        void save(int kind, ServiceReference<?> servicereference, int level, Object message, Throwable exception);
+    }
+
+    /**
+     * Counts the log calls passed on to the loggers of the {@link LogService}.
+     * Only the log calls of levels enabled in the logger are to be counted.
+     */
+    @FunctionalInterface
+    public interface LogCallCounter {
+        void count(Logger delegate, LogLevel logLevel);
+    }
+
+    /**
+     * Create a new logger.
+     *
+     * @param sink saves log calls in the LogServiceAdapter when there is no {@link LogService}
+     * @param logCallCounter counts the log calls passed on to a logger of the {@link LogService}
+     * @param liveLogService gives the {@link LogService} the adapter passes log messages directly to, or null
+     * @param savedLevel tells if the adapter saves log messages of a {@link LogService} log level
+     * @param bundle the bundle given to the getLogger call, or null
+     * @param name the name of the logger
+     * @param loggerType either {@link Logger} or {@link FormatterLogger}
+     */
+    public LogServiceAdapterLogger(SavedLogMessageSink sink, LogCallCounter logCallCounter, Supplier<LogService> liveLogService, IntPredicate savedLevel, Bundle bundle, String name, Class<? extends Logger> loggerType) {
+        this.sink = sink;
+        this.logCallCounter = logCallCounter;
+        this.liveLogService = liveLogService;
+        this.savedLevel = savedLevel;
+        this.bundle = bundle;
+        this.name = name;
+        this.loggerType = loggerType;
+    }
+
+    public static boolean isSupportedLoggerType(Class<?> loggerType) {
+        return loggerType == Logger.class || loggerType == FormatterLogger.class;
+    }
+
+    public Bundle getBundle() {
+        return bundle;
+    }
+
+    @Override
+    public String getName() {
+        return name;
+    }
+
+    @Override
+    public boolean isTraceEnabled() {
+        var delegate = getDelegate();
+        return delegate != null ? delegate.isTraceEnabled() : savedLevel.test(LogService.LOG_DEBUG);
+    }
+
+    @Override
+    public void trace(String message) {
+        var delegate = getDelegate(LogLevel.TRACE);
+        if (delegate != null) {
+            delegate.trace(message);
+        } else {
+            save(LogLevel.TRACE, message, (Object[]) null);
+        }
+    }
+
+    @Override
+    public void trace(String format, Object arg) {
+        var delegate = getDelegate(LogLevel.TRACE);
+        if (delegate != null) {
+            delegate.trace(format, arg);
+        } else {
+            save(LogLevel.TRACE, format, arg);
+        }
+    }
+
+    @Override
+    public void trace(String format, Object arg1, Object arg2) {
+        var delegate = getDelegate(LogLevel.TRACE);
+        if (delegate != null) {
+            delegate.trace(format, arg1, arg2);
+        } else {
+            save(LogLevel.TRACE, format, arg1, arg2);
+        }
+    }
+
+    @Override
+    public void trace(String format, Object... arguments) {
+        var delegate = getDelegate(LogLevel.TRACE);
+        if (delegate != null) {
+            delegate.trace(format, arguments);
+        } else {
+            save(LogLevel.TRACE, format, arguments);
+        }
+    }
+
+    @Override
+    public <E extends Exception> void trace(LoggerConsumer<E> consumer) throws E {
+        var delegate = getDelegate(LogLevel.TRACE);
+        if (delegate != null) {
+            delegate.trace(consumer);
+        } else {
+            save(LogLevel.TRACE, consumer);
+        }
+    }
+
+    @Override
+    public boolean isDebugEnabled() {
+        var delegate = getDelegate();
+        return delegate != null ? delegate.isDebugEnabled() : savedLevel.test(LogService.LOG_DEBUG);
+    }
+
+    @Override
+    public void debug(String message) {
+        var delegate = getDelegate(LogLevel.DEBUG);
+        if (delegate != null) {
+            delegate.debug(message);
+        } else {
+            save(LogLevel.DEBUG, message, (Object[]) null);
+        }
+    }
+
+    @Override
+    public void debug(String format, Object arg) {
+        var delegate = getDelegate(LogLevel.DEBUG);
+        if (delegate != null) {
+            delegate.debug(format, arg);
+        } else {
+            save(LogLevel.DEBUG, format, arg);
+        }
+    }
+
+    @Override
+    public void debug(String format, Object arg1, Object arg2) {
+        var delegate = getDelegate(LogLevel.DEBUG);
+        if (delegate != null) {
+            delegate.debug(format, arg1, arg2);
+        } else {
+            save(LogLevel.DEBUG, format, arg1, arg2);
+        }
+    }
+
+    @Override
+    public void debug(String format, Object... arguments) {
+        var delegate = getDelegate(LogLevel.DEBUG);
+        if (delegate != null) {
+            delegate.debug(format, arguments);
+        } else {
+            save(LogLevel.DEBUG, format, arguments);
+        }
+    }
+
+    @Override
+    public <E extends Exception> void debug(LoggerConsumer<E> consumer) throws E {
+        var delegate = getDelegate(LogLevel.DEBUG);
+        if (delegate != null) {
+            delegate.debug(consumer);
+        } else {
+            save(LogLevel.DEBUG, consumer);
+        }
+    }
+
+    @Override
+    public boolean isInfoEnabled() {
+        var delegate = getDelegate();
+        return delegate != null ? delegate.isInfoEnabled() : savedLevel.test(LogService.LOG_INFO);
+    }
+
+    @Override
+    public void info(String message) {
+        var delegate = getDelegate(LogLevel.INFO);
+        if (delegate != null) {
+            delegate.info(message);
+        } else {
+            save(LogLevel.INFO, message, (Object[]) null);
+        }
+    }
+
+    @Override
+    public void info(String format, Object arg) {
+        var delegate = getDelegate(LogLevel.INFO);
+        if (delegate != null) {
+            delegate.info(format, arg);
+        } else {
+            save(LogLevel.INFO, format, arg);
+        }
+    }
+
+    @Override
+    public void info(String format, Object arg1, Object arg2) {
+        var delegate = getDelegate(LogLevel.INFO);
+        if (delegate != null) {
+            delegate.info(format, arg1, arg2);
+        } else {
+            save(LogLevel.INFO, format, arg1, arg2);
+        }
+    }
+
+    @Override
+    public void info(String format, Object... arguments) {
+        var delegate = getDelegate(LogLevel.INFO);
+        if (delegate != null) {
+            delegate.info(format, arguments);
+        } else {
+            save(LogLevel.INFO, format, arguments);
+        }
+    }
+
+    @Override
+    public <E extends Exception> void info(LoggerConsumer<E> consumer) throws E {
+        var delegate = getDelegate(LogLevel.INFO);
+        if (delegate != null) {
+            delegate.info(consumer);
+        } else {
+            save(LogLevel.INFO, consumer);
+        }
+    }
+
+    @Override
+    public boolean isWarnEnabled() {
+        var delegate = getDelegate();
+        return delegate != null ? delegate.isWarnEnabled() : savedLevel.test(LogService.LOG_WARNING);
+    }
+
+    @Override
+    public void warn(String message) {
+        var delegate = getDelegate(LogLevel.WARN);
+        if (delegate != null) {
+            delegate.warn(message);
+        } else {
+            save(LogLevel.WARN, message, (Object[]) null);
+        }
+    }
+
+    @Override
+    public void warn(String format, Object arg) {
+        var delegate = getDelegate(LogLevel.WARN);
+        if (delegate != null) {
+            delegate.warn(format, arg);
+        } else {
+            save(LogLevel.WARN, format, arg);
+        }
+    }
+
+    @Override
+    public void warn(String format, Object arg1, Object arg2) {
+        var delegate = getDelegate(LogLevel.WARN);
+        if (delegate != null) {
+            delegate.warn(format, arg1, arg2);
+        } else {
+            save(LogLevel.WARN, format, arg1, arg2);
+        }
+    }
+
+    @Override
+    public void warn(String format, Object... arguments) {
+        var delegate = getDelegate(LogLevel.WARN);
+        if (delegate != null) {
+            delegate.warn(format, arguments);
+        } else {
+            save(LogLevel.WARN, format, arguments);
+        }
+    }
+
+    @Override
+    public <E extends Exception> void warn(LoggerConsumer<E> consumer) throws E {
+        var delegate = getDelegate(LogLevel.WARN);
+        if (delegate != null) {
+            delegate.warn(consumer);
+        } else {
+            save(LogLevel.WARN, consumer);
+        }
+    }
+
+    @Override
+    public boolean isErrorEnabled() {
+        var delegate = getDelegate();
+        return delegate != null ? delegate.isErrorEnabled() : savedLevel.test(LogService.LOG_ERROR);
+    }
+
+    @Override
+    public void error(String message) {
+        var delegate = getDelegate(LogLevel.ERROR);
+        if (delegate != null) {
+            delegate.error(message);
+        } else {
+            save(LogLevel.ERROR, message, (Object[]) null);
+        }
+    }
+
+    @Override
+    public void error(String format, Object arg) {
+        var delegate = getDelegate(LogLevel.ERROR);
+        if (delegate != null) {
+            delegate.error(format, arg);
+        } else {
+            save(LogLevel.ERROR, format, arg);
+        }
+    }
+
+    @Override
+    public void error(String format, Object arg1, Object arg2) {
+        var delegate = getDelegate(LogLevel.ERROR);
+        if (delegate != null) {
+            delegate.error(format, arg1, arg2);
+        } else {
+            save(LogLevel.ERROR, format, arg1, arg2);
+        }
+    }
+
+    @Override
+    public void error(String format, Object... arguments) {
+        var delegate = getDelegate(LogLevel.ERROR);
+        if (delegate != null) {
+            delegate.error(format, arguments);
+        } else {
+            save(LogLevel.ERROR, format, arguments);
+        }
+    }
+
+    @Override
+    public <E extends Exception> void error(LoggerConsumer<E> consumer) throws E {
+        var delegate = getDelegate(LogLevel.ERROR);
+        if (delegate != null) {
+            delegate.error(consumer);
+        } else {
+            save(LogLevel.ERROR, consumer);
+        }
+    }
+
+    @Override
+    public void audit(String message) {
+        var delegate = getDelegate(LogLevel.AUDIT);
+        if (delegate != null) {
+            delegate.audit(message);
+        } else {
+            save(LogLevel.AUDIT, message, (Object[]) null);
+        }
+    }
+
+    @Override
+    public void audit(String format, Object arg) {
+        var delegate = getDelegate(LogLevel.AUDIT);
+        if (delegate != null) {
+            delegate.audit(format, arg);
+        } else {
+            save(LogLevel.AUDIT, format, arg);
+        }
+    }
+
+    @Override
+    public void audit(String format, Object arg1, Object arg2) {
+        var delegate = getDelegate(LogLevel.AUDIT);
+        if (delegate != null) {
+            delegate.audit(format, arg1, arg2);
+        } else {
+            save(LogLevel.AUDIT, format, arg1, arg2);
+        }
+    }
+
+    @Override
+    public void audit(String format, Object... arguments) {
+        var delegate = getDelegate(LogLevel.AUDIT);
+        if (delegate != null) {
+            delegate.audit(format, arguments);
+        } else {
+            save(LogLevel.AUDIT, format, arguments);
+        }
+    }
+
+    private Logger getDelegate(LogLevel logLevel) {
+        var delegate = getDelegate();
+        if (delegate != null) {
+            logCallCounter.count(delegate, logLevel);
+        }
+
+        return delegate;
+    }
+
+    private Logger getDelegate() {
+        var logservice = liveLogService.get();
+        return logservice != null ? getDelegate(logservice) : null;
+    }
+
+    private Logger getDelegate(LogService logservice) {
+        var current = currentDelegate;
+        if (current == null || current.logservice != logservice) {
+            var logger = bundle != null ? logservice.getLogger(bundle, name, loggerType) : logservice.getLogger(name, loggerType);
+            current = new Delegate(logservice, logger);
+            currentDelegate = current;
+        }
+
+        return current.logger;
+    }
+
+    private void save(LogLevel logLevel, String format, Object... arguments) {
+        var count = arguments != null ? arguments.length : 0;
+        Throwable exception = null;
+        ServiceReference<?> servicereference = null;
+        if (count > 0 && arguments[count - 1] instanceof Throwable) {
+            exception = (Throwable) arguments[--count];
+        }
+
+        if (count > 0 && arguments[count - 1] instanceof ServiceReference) {
+            servicereference = (ServiceReference<?>) arguments[--count];
+        }
+
+        var kind = SavedLogMessages.WITH_LOGGER_CALL |
+            (servicereference != null ? SavedLogMessages.WITH_SERVICE_REFERENCE : 0) |
+            (exception != null ? SavedLogMessages.WITH_EXCEPTION : 0);
+        var call = new SavedLoggerCall(this, logLevel, format, arguments, count);
+        sink.save(kind, servicereference, logServiceLevel(logLevel), call, exception);
+    }
+
+    private void save(LogLevel logLevel, LoggerConsumer<?> consumer) {
+        var call = new SavedLoggerCall(this, logLevel, consumer);
+        sink.save(SavedLogMessages.WITH_LOGGER_CALL, null, logServiceLevel(logLevel), call, null);
+    }
+
+    /**
+     * Make a saved log call again on the logger of a {@link LogService}.
+     *
+     * @param consumer the consumer of a saved call to a log method taking a {@link LoggerConsumer}, or null
+     * @return false if the {@link LogService} has no loggers, e.g. because it is older than OSGi R7
+     */
+    boolean replay(LogService logservice, LogLevel logLevel, String format, Object[] arguments, LoggerConsumer<?> consumer) {
+        Logger logger;
+        try {
+            logger = getDelegate(logservice);
+        } catch (RuntimeException | LinkageError e) { // NOSONAR LogService implementations from before OSGi R7 have no getLogger
+            return false;
+        }
+
+        if (consumer != null) {
+            replayConsumer(logger, logLevel, consumer);
+        } else if (arguments == null) {
+            replayMessage(logger, logLevel, format);
+        } else {
+            replayFormat(logger, logLevel, format, arguments);
+        }
+
+        return true;
+    }
+
+    /**
+     * Check if a saved call would be logged by the logger of a {@link LogService},
+     * without formatting it.  All levels are enabled if the {@link LogService}
+     * has no loggers.
+     */
+    boolean isEnabledIn(LogService logservice, LogLevel logLevel) {
+        try {
+            return isEnabled(getDelegate(logservice), logLevel);
+        } catch (RuntimeException | LinkageError e) { // NOSONAR LogService implementations from before OSGi R7 have no getLogger
+            return true;
+        }
+    }
+
+    private static void replayMessage(Logger logger, LogLevel logLevel, String message) {
+        switch (logLevel) {
+            case TRACE:
+                logger.trace(message);
+                break;
+            case DEBUG:
+                logger.debug(message);
+                break;
+            case INFO:
+                logger.info(message);
+                break;
+            case WARN:
+                logger.warn(message);
+                break;
+            case ERROR:
+                logger.error(message);
+                break;
+            default:
+                logger.audit(message);
+        }
+    }
+
+    private static void replayConsumer(Logger logger, LogLevel logLevel, LoggerConsumer<?> consumer) {
+        try {
+            switch (logLevel) {
+                case TRACE:
+                    logger.trace(consumer);
+                    break;
+                case DEBUG:
+                    logger.debug(consumer);
+                    break;
+                case INFO:
+                    logger.info(consumer);
+                    break;
+                case WARN:
+                    logger.warn(consumer);
+                    break;
+                default:
+                    logger.error(consumer);
+            }
+        } catch (Exception e) {
+            replayMessage(logger, logLevel, SavedLogMessages.FAILED_TO_BUILD_MESSAGE + e);
+        }
+    }
+
+    private static void replayFormat(Logger logger, LogLevel logLevel, String format, Object[] arguments) {
+        switch (logLevel) {
+            case TRACE:
+                logger.trace(format, arguments);
+                break;
+            case DEBUG:
+                logger.debug(format, arguments);
+                break;
+            case INFO:
+                logger.info(format, arguments);
+                break;
+            case WARN:
+                logger.warn(format, arguments);
+                break;
+            case ERROR:
+                logger.error(format, arguments);
+                break;
+            default:
+                logger.audit(format, arguments);
+        }
+    }
+
+    /**
+     * Format a saved log call, the way the type of this logger does.
+     */
+    String format(String format, Object[] arguments, int count) {
+        if (arguments == null) {
+            return format;
+        }
+
+        return loggerType == FormatterLogger.class ? formatPrintf(format, arguments, count) : formatPlaceholders(format, arguments, count);
+    }
+
+    /**
+     * The text logged by a saved {@link LoggerConsumer}, for when it can't be replayed
+     * on a logger.  The consumer is given a logger that collects the log messages
+     * instead of logging them, and the collected log messages are joined by newlines.
+     */
+    String consumerText(LoggerConsumer<?> consumer) {
+        var text = new StringBuilder();
+        SavedLogMessageSink collector = (kind, servicereference, level, message, exception) -> {
+            if (text.length() > 0) {
+                text.append('\n');
+            }
+
+            text.append(SavedLogMessages.messageText(message));
+        };
+        try {
+            consumer.accept(new LogServiceAdapterLogger(collector, (delegate, logLevel) -> { }, () -> null, level -> true, bundle, name, loggerType));
+        } catch (Exception e) {
+            return SavedLogMessages.FAILED_TO_BUILD_MESSAGE + e;
+        }
+
+        return text.toString();
+    }
+
+    /**
+     * The {@link LogService} log level that a {@link Logger} log level is saved with.
+     */
+    public static int logServiceLevel(LogLevel logLevel) {
+        switch (logLevel) {
+            case ERROR:
+                return LogService.LOG_ERROR;
+            case WARN:
+                return LogService.LOG_WARNING;
+            case TRACE:
+            case DEBUG:
+                return LogService.LOG_DEBUG;
+            default:
+                return LogService.LOG_INFO;
+        }
+    }
+
+    /**
+     * Check if a level is enabled in a logger.  Audit log calls are always logged.
+     */
+    public static boolean isEnabled(Logger logger, LogLevel logLevel) {
+        switch (logLevel) {
+            case TRACE:
+                return logger.isTraceEnabled();
+            case DEBUG:
+                return logger.isDebugEnabled();
+            case INFO:
+                return logger.isInfoEnabled();
+            case WARN:
+                return logger.isWarnEnabled();
+            case ERROR:
+                return logger.isErrorEnabled();
+            default:
+                return true;
+        }
+    }
+
+    /**
+     * Replace "{}" placeholders with arguments, the way {@link Logger} does.
+     * A placeholder can be escaped with a backslash.
+     */
+    static String formatPlaceholders(String format, Object[] arguments, int count) {
+        if (format == null) {
+            return format;
+        }
+
+        return MessageTemplate.of(format).format(arguments, count);
+    }
+
+    /**
+     * Format with {@link String#format(String, Object...)}, the way {@link FormatterLogger} does.
+     */
+    static String formatPrintf(String format, Object[] arguments, int count) {
+        if (format == null || count == 0) {
+            return format;
+        }
+
+        try {
+            return PrintfTemplate.of(format).format(arguments, count);
+        } catch (IllegalFormatException e) {
+            return format;
+        }
+    }
+
+}
@@ -0,0 +1,99 @@
+/*
+ * Copyright 2026 Steinar Bang
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package no.priv.bang.osgi.service.adapters.logservice.internal;
+
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.osgi.framework.Bundle;
+import org.osgi.service.log.Logger;
+
+/**
+ * Caches the loggers returned by the getLogger methods of a LogServiceAdapter,
+ * by logger type, bundle and name.
+ *
+ * <p>The loggers are kept in nested maps (logger type, then bundle, then
+ * name), so that finding a cached logger is three map lookups that don't
+ * create a key object.  A logger that isn't in the cache is created outside
+ * of the maps, so that a {@link LoggerFactory} that gets loggers from the
+ * cache doesn't update a map from inside an update of the same map.  If
+ * two threads create the same logger at the same time, both get the logger
+ * that was put in the cache first.
+ *
+ * <p>The cache is never emptied.  A LogServiceAdapter replaces the whole cache
+ * when the LogService changes.
+ */
+public class LoggerCache {
+
+    private static final Object NO_BUNDLE = new Object();
+
+    private final LoggerFactory factory;
+    private final ConcurrentHashMap<Class<?>, ConcurrentHashMap<Object, ConcurrentHashMap<String, Logger>>> loggers = new ConcurrentHashMap<>();
+
+    /**
+     * Creates the loggers that aren't in the cache.
+     */
+    @FunctionalInterface
+    public interface LoggerFactory {
+        <L extends Logger> L createLogger(Bundle bundle, String name, Class<L> loggerType);
+    }
+
+    public LoggerCache(LoggerFactory factory) {
+        this.factory = factory;
+    }
+
+    /**
+     * Find a cached logger, or create it and put it in the cache.
+     *
+     * @param bundle the bundle the logger is for, or null
+     * @param name the name of the logger, loggers with no name aren't cached
+     * @param loggerType the type of the logger
+     * @return the cached logger
+     */
+    public <L extends Logger> L getLogger(Bundle bundle, String name, Class<L> loggerType) {
+        if (name == null) {
+            return factory.createLogger(bundle, name, loggerType);
+        }
+
+        var bundleKey = bundle != null ? bundle : NO_BUNDLE;
+        var byBundle = loggers.get(loggerType);
+        var byName = byBundle != null ? byBundle.get(bundleKey) : null;
+        var logger = byName != null ? byName.get(name) : null;
+        if (logger != null) {
+            return loggerType.cast(logger);
+        }
+
+        var created = factory.createLogger(bundle, name, loggerType);
+        if (byName == null) {
+            byName = loggers
+                .computeIfAbsent(loggerType, t -> new ConcurrentHashMap<>())
+                .computeIfAbsent(bundleKey, b -> new ConcurrentHashMap<>());
+        }
+
+        var existing = byName.putIfAbsent(name, created);
+        return existing != null ? loggerType.cast(existing) : created;
+    }
+
+    /**
+     * The number of cached loggers.
+     */
+    public int size() {
+        return loggers.values().stream()
+            .flatMap(byBundle -> byBundle.values().stream())
+            .mapToInt(ConcurrentHashMap::size)
+            .sum();
+    }
+
+}
@@ -0,0 +1,137 @@
+/*
+ * Copyright 2026 Steinar Bang
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package no.priv.bang.osgi.service.adapters.logservice.internal;
+
+import java.util.ArrayList;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * A "{}" placeholder format string of a {@link org.osgi.service.log.Logger},
+ * split once into the literal text between the placeholders, so that
+ * formatting a log message doesn't have to scan the format string again.
+ *
+ * <p>Compiled templates are kept in a small fixed-size table, indexed by the
+ * identity hash of the format string, since format strings usually are
+ * constants.  A format string hashing to an occupied slot replaces the
+ * template in the slot, so the table never grows.
+ *
+ * <p>The log message is built in a {@link StringBuilder} that is reused by
+ * each thread.  The builder isn't reused when formatting an argument logs,
+ * or when a long log message has made it large.
+ */
+final class MessageTemplate {
+
+    static final int CACHE_SIZE = 256;
+    static final int MAXIMUM_REUSED_BUILDER_CAPACITY = 4096;
+    private static final String PLACEHOLDER = "{}";
+    private static final AtomicReferenceArray<MessageTemplate> cache = new AtomicReferenceArray<>(CACHE_SIZE);
+    private static final ThreadLocal<StringBuilder> reusedBuilder = ThreadLocal.withInitial(StringBuilder::new);
+
+    private final String format;
+    private final String[] literals;
+
+    private MessageTemplate(String format, String[] literals) {
+        this.format = format;
+        this.literals = literals;
+    }
+
+    /**
+     * Find the compiled template of a format string, compiling it if it isn't in the cache.
+     */
+    static MessageTemplate of(String format) {
+        var index = System.identityHashCode(format) & (CACHE_SIZE - 1);
+        var template = cache.get(index);
+        if (template == null || template.format != format) {
+            template = compile(format);
+            cache.lazySet(index, template);
+        }
+
+        return template;
+    }
+
+    static MessageTemplate compile(String format) {
+        var literals = new ArrayList<String>();
+        var literal = new StringBuilder();
+        var i = 0;
+        while (i < format.length()) {
+            var c = format.charAt(i);
+            if (c == '\\' && format.startsWith(PLACEHOLDER, i + 1)) {
+                literal.append(PLACEHOLDER);
+                i += 3;
+            } else if (c == '{' && format.startsWith(PLACEHOLDER, i)) {
+                literals.add(literal.toString());
+                literal.setLength(0);
+                i += 2;
+            } else {
+                literal.append(c);
+                ++i;
+            }
+        }
+
+        literals.add(literal.toString());
+        return new MessageTemplate(format, literals.toArray(new String[0]));
+    }
+
+    int getPlaceholderCount() {
+        return literals.length - 1;
+    }
+
+    /**
+     * Replace the placeholders with the first count arguments.  Placeholders
+     * without an argument are kept as "{}".
+     */
+    String format(Object[] arguments, int count) {
+        if (literals.length == 1) {
+            return literals[0];
+        }
+
+        var message = acquireBuilder();
+        try {
+            message.append(literals[0]);
+            for (var placeholder = 1; placeholder < literals.length; ++placeholder) {
+                if (placeholder <= count) {
+                    message.append(arguments[placeholder - 1]);
+                } else {
+                    message.append(PLACEHOLDER);
+                }
+
+                message.append(literals[placeholder]);
+            }
+
+            return message.toString();
+        } finally {
+            releaseBuilder(message);
+        }
+    }
+
+    /**
+     * Take the {@link StringBuilder} of this thread, or a new one if it is in use.
+     * The builder must be given back with {@link #releaseBuilder(StringBuilder)}.
+     */
+    static StringBuilder acquireBuilder() {
+        var builder = reusedBuilder.get();
+        reusedBuilder.set(null); // Formatting an argument may log, and must not get the same builder
+        return builder != null ? builder : new StringBuilder();
+    }
+
+    static void releaseBuilder(StringBuilder builder) {
+        if (builder.capacity() <= MAXIMUM_REUSED_BUILDER_CAPACITY) {
+            builder.setLength(0);
+            reusedBuilder.set(builder);
+        }
+    }
+
+}
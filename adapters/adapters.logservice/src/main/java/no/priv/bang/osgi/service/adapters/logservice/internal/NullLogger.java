@@ -0,0 +1,218 @@
+/*
+ * Copyright 2026 Steinar Bang
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package no.priv.bang.osgi.service.adapters.logservice.internal;
+
+import org.osgi.service.log.Logger;
+import org.osgi.service.log.LoggerConsumer;
+
+/**
+ * This object is used by a LoggerAdapter that discards log calls when there
+ * is no LogService.
+ *
+ * <p>All levels are disabled, and the log methods do nothing, so a LoggerAdapter
+ * can call the logger without checking for null.  The logger has no state,
+ * so a single instance is shared.
+ *
+ * @author Steinar Bang
+ *
+ */
+public class NullLogger implements Logger {
+
+    private static final Logger instance = new NullLogger();
+
+    public static Logger getInstance() {
+        return instance;
+    }
+
+    private NullLogger() {
+    }
+
+    @Override
+    public String getName() {
+        return "NullLogger";
+    }
+
+    @Override
+    public boolean isTraceEnabled() {
+        return false;
+    }
+
+    @Override
+    public void trace(String message) {
+        // Discarded
+    }
+
+    @Override
+    public void trace(String format, Object arg) {
+        // Discarded
+    }
+
+    @Override
+    public void trace(String format, Object arg1, Object arg2) {
+        // Discarded
+    }
+
+    @Override
+    public void trace(String format, Object... arguments) {
+        // Discarded
+    }
+
+    @Override
+    public <E extends Exception> void trace(LoggerConsumer<E> consumer) throws E {
+        // Discarded, the level isn't enabled
+    }
+
+    @Override
+    public boolean isDebugEnabled() {
+        return false;
+    }
+
+    @Override
+    public void debug(String message) {
+        // Discarded
+    }
+
+    @Override
+    public void debug(String format, Object arg) {
+        // Discarded
+    }
+
+    @Override
+    public void debug(String format, Object arg1, Object arg2) {
+        // Discarded
+    }
+
+    @Override
+    public void debug(String format, Object... arguments) {
+        // Discarded
+    }
+
+    @Override
+    public <E extends Exception> void debug(LoggerConsumer<E> consumer) throws E {
+        // Discarded, the level isn't enabled
+    }
+
+    @Override
+    public boolean isInfoEnabled() {
+        return false;
+    }
+
+    @Override
+    public void info(String message) {
+        // Discarded
+    }
+
+    @Override
+    public void info(String format, Object arg) {
+        // Discarded
+    }
+
+    @Override
+    public void info(String format, Object arg1, Object arg2) {
+        // Discarded
+    }
+
+    @Override
+    public void info(String format, Object... arguments) {
+        // Discarded
+    }
+
+    @Override
+    public <E extends Exception> void info(LoggerConsumer<E> consumer) throws E {
+        // Discarded, the level isn't enabled
+    }
+
+    @Override
+    public boolean isWarnEnabled() {
+        return false;
+    }
+
+    @Override
+    public void warn(String message) {
+        // Discarded
+    }
+
+    @Override
+    public void warn(String format, Object arg) {
+        // Discarded
+    }
+
+    @Override
+    public void warn(String format, Object arg1, Object arg2) {
+        // Discarded
+    }
+
+    @Override
+    public void warn(String format, Object... arguments) {
+        // Discarded
+    }
+
+    @Override
+    public <E extends Exception> void warn(LoggerConsumer<E> consumer) throws E {
+        // Discarded, the level isn't enabled
+    }
+
+    @Override
+    public boolean isErrorEnabled() {
+        return false;
+    }
+
+    @Override
+    public void error(String message) {
+        // Discarded
+    }
+
+    @Override
+    public void error(String format, Object arg) {
+        // Discarded
+    }
+
+    @Override
+    public void error(String format, Object arg1, Object arg2) {
+        // Discarded
+    }
+
+    @Override
+    public void error(String format, Object... arguments) {
+        // Discarded
+    }
+
+    @Override
+    public <E extends Exception> void error(LoggerConsumer<E> consumer) throws E {
+        // Discarded, the level isn't enabled
+    }
+
+    @Override
+    public void audit(String message) {
+        // Discarded
+    }
+
+    @Override
+    public void audit(String format, Object arg) {
+        // Discarded
+    }
+
+    @Override
+    public void audit(String format, Object arg1, Object arg2) {
+        // Discarded
+    }
+
+    @Override
+    public void audit(String format, Object... arguments) {
+        // Discarded
+    }
+
+}
@@ -0,0 +1,199 @@
+/*
+ * Copyright 2026 Steinar Bang
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package no.priv.bang.osgi.service.adapters.logservice.internal;
+
+import java.math.BigInteger;
+import java.text.DecimalFormatSymbols;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Formattable;
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * A printf format string of a {@link org.osgi.service.log.FormatterLogger},
+ * parsed once into the literal text between the format specifiers, and the
+ * conversions of the format specifiers.
+ *
+ * <p>Format strings only using the plain "%s", "%d" and "%x" conversions,
+ * and "%%" and "%n", are formatted here, by appending the arguments to a
+ * reused {@link StringBuilder}, without creating a {@link java.util.Formatter}.
+ * Everything else, e.g. flags, widths, precisions, argument indexes and other
+ * conversions, arguments that "%d" and "%x" don't handle the same way as
+ * {@link java.util.Formatter}, and locales with other digits than ASCII
+ * digits, is formatted by {@link String#format(String, Object...)}.
+ *
+ * <p>Parsed templates are kept in a small fixed-size table indexed by the
+ * identity hash of the format string, like {@link MessageTemplate}.
+ */
+final class PrintfTemplate {
+
+    static final int CACHE_SIZE = 256;
+    private static final AtomicReferenceArray<PrintfTemplate> cache = new AtomicReferenceArray<>(CACHE_SIZE);
+    private static volatile LocaleDigits localeDigits = new LocaleDigits(null, false);
+
+    private final String format;
+    private final String[] literals;
+    private final char[] conversions;
+    private final boolean fastPath;
+
+    /**
+     * Whether the default formatting locale formats numbers with ASCII digits,
+     * kept for the last locale seen.
+     */
+    private static final class LocaleDigits {
+        final Locale locale;
+        final boolean ascii;
+
+        LocaleDigits(Locale locale, boolean ascii) {
+            this.locale = locale;
+            this.ascii = ascii;
+        }
+    }
+
+    private PrintfTemplate(String format, String[] literals, char[] conversions, boolean fastPath) {
+        this.format = format;
+        this.literals = literals;
+        this.conversions = conversions;
+        this.fastPath = fastPath;
+    }
+
+    /**
+     * Find the parsed template of a format string, parsing it if it isn't in the cache.
+     */
+    static PrintfTemplate of(String format) {
+        var index = System.identityHashCode(format) & (CACHE_SIZE - 1);
+        var template = cache.get(index);
+        if (template == null || template.format != format) {
+            template = parse(format);
+            cache.lazySet(index, template);
+        }
+
+        return template;
+    }
+
+    static PrintfTemplate parse(String format) {
+        var literals = new ArrayList<String>();
+        var conversions = new StringBuilder();
+        var literal = new StringBuilder();
+        var i = 0;
+        while (i < format.length()) {
+            var c = format.charAt(i++);
+            if (c != '%') {
+                literal.append(c);
+                continue;
+            }
+
+            var conversion = i < format.length() ? format.charAt(i++) : 0;
+            if (conversion == '%') {
+                literal.append('%');
+            } else if (conversion == 'n') {
+                literal.append(System.lineSeparator());
+            } else if (conversion == 's' || conversion == 'd' || conversion == 'x') {
+                literals.add(literal.toString());
+                literal.setLength(0);
+                conversions.append(conversion);
+            } else {
+                return new PrintfTemplate(format, null, null, false);
+            }
+        }
+
+        literals.add(literal.toString());
+        return new PrintfTemplate(format, literals.toArray(new String[0]), conversions.toString().toCharArray(), true);
+    }
+
+    boolean isFastPath() {
+        return fastPath;
+    }
+
+    /**
+     * Format the first count arguments.
+     *
+     * @throws java.util.IllegalFormatException if {@link String#format(String, Object...)} would throw it
+     */
+    String format(Object[] arguments, int count) {
+        if (!fastPath || count < conversions.length || !canAppend(arguments)) {
+            return String.format(format, Arrays.copyOf(arguments, count));
+        }
+
+        if (conversions.length == 0) {
+            return literals[0];
+        }
+
+        var message = MessageTemplate.acquireBuilder();
+        try {
+            message.append(literals[0]);
+            for (var i = 0; i < conversions.length; ++i) {
+                append(message, conversions[i], arguments[i]);
+                message.append(literals[i + 1]);
+            }
+
+            return message.toString();
+        } finally {
+            MessageTemplate.releaseBuilder(message);
+        }
+    }
+
+    private boolean canAppend(Object[] arguments) {
+        for (var i = 0; i < conversions.length; ++i) {
+            var argument = arguments[i];
+            switch (conversions[i]) {
+                case 's':
+                    if (argument instanceof Formattable) {
+                        return false;
+                    }
+                    break;
+                case 'd':
+                    if (argument != null && !(isIntegral(argument) && hasAsciiDigits())) {
+                        return false;
+                    }
+                    break;
+                default:
+                    if (argument != null && !(argument instanceof Integer || argument instanceof Long)) {
+                        return false; // Negative bytes and shorts, and BigIntegers, are formatted differently by Formatter
+                    }
+            }
+        }
+
+        return true;
+    }
+
+    private static void append(StringBuilder message, char conversion, Object argument) {
+        if (conversion == 'x' && argument instanceof Integer) {
+            message.append(Integer.toHexString((Integer) argument));
+        } else if (conversion == 'x' && argument instanceof Long) {
+            message.append(Long.toHexString((Long) argument));
+        } else {
+            message.append(argument);
+        }
+    }
+
+    private static boolean isIntegral(Object argument) {
+        return argument instanceof Integer || argument instanceof Long || argument instanceof Short || argument instanceof Byte || argument instanceof BigInteger;
+    }
+
+    private static boolean hasAsciiDigits() {
+        var locale = Locale.getDefault(Locale.Category.FORMAT);
+        var digits = localeDigits;
+        if (digits.locale != locale) {
+            digits = new LocaleDigits(locale, DecimalFormatSymbols.getInstance(locale).getZeroDigit() == '0');
+            localeDigits = digits;
+        }
+
+        return digits.ascii;
+    }
+
+}
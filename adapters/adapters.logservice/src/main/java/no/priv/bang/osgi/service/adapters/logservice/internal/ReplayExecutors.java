@@ -0,0 +1,74 @@
+/*
+ * Copyright 2026 Steinar Bang
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package no.priv.bang.osgi.service.adapters.logservice.internal;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.util.concurrent.Executor;
+
+/**
+ * Provides the {@link Executor} used to replay saved log messages in the
+ * background.
+ *
+ * <p>On JVMs that have virtual threads, each replay runs in a new virtual
+ * thread.  On older JVMs, each replay runs in a new daemon thread.  Replays
+ * are rare (one for each time a LogService is injected), so there is no
+ * point in keeping a thread pool around.
+ */
+public class ReplayExecutors {
+
+    static final String REPLAY_THREAD_NAME = "LogServiceAdapter replay";
+    private static final Executor DEFAULT_EXECUTOR = createDefaultExecutor();
+
+    private ReplayExecutors() {}
+
+    public static Executor getDefaultExecutor() {
+        return DEFAULT_EXECUTOR;
+    }
+
+    static Executor createDefaultExecutor() {
+        var startVirtualThread = findStartVirtualThread();
+        if (startVirtualThread != null) {
+            return task -> startVirtualThread(startVirtualThread, task);
+        }
+
+        return ReplayExecutors::startDaemonThread;
+    }
+
+    static MethodHandle findStartVirtualThread() {
+        try {
+            return MethodHandles.publicLookup().findStatic(Thread.class, "startVirtualThread", MethodType.methodType(Thread.class, Runnable.class));
+        } catch (NoSuchMethodException | IllegalAccessException e) {
+            return null;
+        }
+    }
+
+    static void startVirtualThread(MethodHandle startVirtualThread, Runnable task) {
+        try {
+            startVirtualThread.invoke(task);
+        } catch (Throwable e) { // NOSONAR MethodHandle.invoke is declared to throw Throwable
+            startDaemonThread(task);
+        }
+    }
+
+    static void startDaemonThread(Runnable task) {
+        var thread = new Thread(task, REPLAY_THREAD_NAME);
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+}
@@ -0,0 +1,118 @@
+/*
+ * Copyright 2017, 2020, 2026 Steinar Bang
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package no.priv.bang.osgi.service.adapters.logservice.internal;
+
+import org.osgi.framework.Bundle;
+import org.osgi.framework.ServiceReference;
+import org.osgi.service.log.LogEntry;
+import org.osgi.service.log.LogLevel;
+
+/**
+ * A saved log message given to a {@link org.osgi.service.log.LogListener}
+ * when the saved log messages are replayed.  Created at replay time from
+ * the fields stored in {@link SavedLogMessages}.
+ */
+public class SavedLogEntry implements LogEntry {
+
+    static final String LOGSERVICE_LOGGER_NAME = "LogService";
+    private static final LogLevel[] LOG_LEVELS = { LogLevel.ERROR, LogLevel.ERROR, LogLevel.WARN, LogLevel.INFO, LogLevel.DEBUG };
+
+    private final ServiceReference<?> servicereference;
+    private final int level;
+    private final LogLevel logLevel;
+    private final String loggerName;
+    private final Bundle bundle;
+    private final String message;
+    private final Throwable exception;
+    private final long time;
+    private final String threadName;
+
+    public SavedLogEntry(ServiceReference<?> servicereference, int level, String message, Throwable exception, long time, String threadName) {
+        this(servicereference, level, LOG_LEVELS[SavedLogMessages.levelIndex(level)], LOGSERVICE_LOGGER_NAME, null, message, exception, time, threadName);
+    }
+
+    /**
+     * Create an entry for a log call saved from a logger, keeping the
+     * {@link LogLevel}, name and bundle of the logger.
+     */
+    public SavedLogEntry(ServiceReference<?> servicereference, int level, LogLevel logLevel, String loggerName, Bundle bundle, String message, Throwable exception, long time, String threadName) {
+        this.servicereference = servicereference;
+        this.level = level;
+        this.logLevel = logLevel;
+        this.loggerName = loggerName;
+        this.bundle = bundle;
+        this.message = message;
+        this.exception = exception;
+        this.time = time;
+        this.threadName = threadName;
+    }
+
+    @Override
+    public int getLevel() {
+        return level;
+    }
+
+    @Override
+    public LogLevel getLogLevel() {
+        return logLevel;
+    }
+
+    @Override
+    public String getMessage() {
+        return message;
+    }
+
+    @Override
+    public Throwable getException() {
+        return exception;
+    }
+
+    @Override
+    public ServiceReference<?> getServiceReference() {
+        return servicereference;
+    }
+
+    @Override
+    public long getTime() {
+        return time;
+    }
+
+    @Override
+    public String getThreadInfo() {
+        return threadName;
+    }
+
+    @Override
+    public String getLoggerName() {
+        return loggerName;
+    }
+
+    @Override
+    public Bundle getBundle() {
+        return bundle;
+    }
+
+    @Override
+    public long getSequence() {
+        return 0;
+    }
+
+    @Override
+    public StackTraceElement getLocation() {
+        return null;
+    }
+
+}
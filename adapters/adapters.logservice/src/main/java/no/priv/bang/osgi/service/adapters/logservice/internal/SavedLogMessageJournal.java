@@ -0,0 +1,323 @@
+/*
+ * Copyright 2026 Steinar Bang
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package no.priv.bang.osgi.service.adapters.logservice.internal;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.osgi.framework.FrameworkUtil;
+import org.osgi.framework.ServiceReference;
+
+import no.priv.bang.osgi.service.adapters.logservice.internal.SavedLogMessages.SavedLogMessageHandler;
+
+/**
+ * An append-only journal file holding saved log messages that didn't fit
+ * in the memory buffer of {@link SavedLogMessages}.
+ *
+ * <p>The journal file is memory-mapped in regions that are added as the
+ * journal grows.  Each log message is written as a record holding the
+ * kind, level, time, message and thread name.  Messages saved as a
+ * supplier are built when written to the journal.  Exceptions and service
+ * references are live objects that can't be written to a file, so they
+ * are kept in memory, in the same order as the records referring to them.
+ * The number of exceptions and service references kept in memory is limited,
+ * so that the journal doesn't fill the heap.  When the limit is reached,
+ * the service reference and the stack trace of the exception of a log
+ * message are written to the journal as text, after the message.
+ *
+ * <p>The journal file is created when the first log message is written,
+ * and is deleted when the last log message has been read.
+ *
+ * <p>Writing and reading is synchronized on the journal.  The journal is only
+ * used when the memory buffer is full, so the journal isn't on the fast path.
+ * Whether the journal is in use, which is checked for every saved log message,
+ * is a volatile flag that is read without locking.
+ */
+class SavedLogMessageJournal {
+
+    static final int REGION_SIZE = 1 << 20;
+    static final long DEFAULT_MAXIMUM_SIZE = 64L << 20;
+    static final int DEFAULT_MAXIMUM_REFERENCES = 1024;
+    static final String JOURNAL_FILE_PREFIX = "logserviceadapter-";
+    static final String JOURNAL_FILE_SUFFIX = ".journal";
+    private static final int END_OF_REGION = 0;
+    private static final int NULL_STRING = -1;
+    private static final int RECORD_HEADER_SIZE = Byte.BYTES + Byte.BYTES + Long.BYTES;
+    private static final Object NULL_REFERENCE = new Object();
+
+    private final Path directory;
+    private final long maximumSize;
+    private final int maximumReferences;
+    private final ArrayDeque<Object> references = new ArrayDeque<>();
+    private final List<ByteBuffer> regions = new ArrayList<>();
+    private Path file;
+    private FileChannel channel;
+    private long mappedSize;
+    private ByteBuffer writeRegion;
+    private ByteBuffer readRegion;
+    private int nextReadRegion;
+    private volatile int size;
+    private volatile boolean inUse; // True while the journal file exists
+
+    SavedLogMessageJournal(Path directory, long maximumSize, int maximumReferences) {
+        this.directory = directory;
+        this.maximumSize = maximumSize;
+        this.maximumReferences = maximumReferences;
+    }
+
+    Path getDirectory() {
+        return directory;
+    }
+
+    boolean isInUse() {
+        return inUse;
+    }
+
+    int size() {
+        return size;
+    }
+
+    /**
+     * Append a log message to the journal, but only if the journal already holds
+     * log messages, so that log messages aren't replayed out of order.
+     *
+     * @return true if the log message was appended
+     */
+    boolean appendIfInUse(int kind, ServiceReference<?> servicereference, int level, Object message, Throwable exception, long time, String threadName) {
+        if (!inUse) {
+            return false;
+        }
+
+        synchronized (this) {
+            return file != null && append(kind, servicereference, level, message, exception, time, threadName);
+        }
+    }
+
+    /**
+     * Append a log message to the journal, creating the journal file if needed.
+     *
+     * @return true if the log message was appended, false if the journal is full or can't be written
+     */
+    synchronized boolean append(int kind, ServiceReference<?> servicereference, int level, Object message, Throwable exception, long time, String threadName) {
+        var messageText = SavedLogMessages.messageText(message);
+        var recordKind = kind & SavedLogMessages.LOG_METHOD;
+        if (references.size() + Integer.bitCount(recordKind) > maximumReferences) { // One reference for each of the exception and the service reference
+            messageText = withReferencesAsText(recordKind, messageText, servicereference, exception);
+            recordKind = SavedLogMessages.LEVEL_AND_MESSAGE;
+        }
+
+        var messageBytes = messageText != null ? messageText.getBytes(UTF_8) : null;
+        var threadNameBytes = threadName != null ? threadName.getBytes(UTF_8) : null;
+        var recordSize = RECORD_HEADER_SIZE + stringSize(messageBytes) + stringSize(threadNameBytes);
+        try {
+            if (!ensureRoom(Integer.BYTES + recordSize)) {
+                return false;
+            }
+        } catch (IOException e) {
+            return false;
+        }
+
+        writeRegion.putInt(recordSize);
+        writeRegion.put((byte) recordKind);
+        writeRegion.put((byte) Math.max(Byte.MIN_VALUE, Math.min(Byte.MAX_VALUE, level)));
+        writeRegion.putLong(time);
+        putString(messageBytes);
+        putString(threadNameBytes);
+        if ((recordKind & SavedLogMessages.WITH_SERVICE_REFERENCE) != 0) {
+            references.add(servicereference != null ? servicereference : NULL_REFERENCE);
+        }
+
+        if ((recordKind & SavedLogMessages.WITH_EXCEPTION) != 0) {
+            references.add(exception != null ? exception : NULL_REFERENCE);
+        }
+
+        ++size; // NOSONAR only written with the journal locked
+        return true;
+    }
+
+    /**
+     * Add the service reference and the stack trace of the exception of a log
+     * message to the message text, for log messages whose references don't
+     * fit in memory.
+     */
+    static String withReferencesAsText(int kind, String messageText, ServiceReference<?> servicereference, Throwable exception) {
+        var text = new StringWriter();
+        text.write(String.valueOf(messageText));
+        if ((kind & SavedLogMessages.WITH_SERVICE_REFERENCE) != 0 && servicereference != null) {
+            text.write(" [" + servicereference + "]");
+        }
+
+        if ((kind & SavedLogMessages.WITH_EXCEPTION) != 0 && exception != null) {
+            text.write(System.lineSeparator());
+            exception.printStackTrace(new PrintWriter(text, true));
+        }
+
+        return text.toString();
+    }
+
+    /**
+     * Read the oldest log message in the journal and give it to a handler.
+     * If the journal is empty, the journal file is deleted.
+     *
+     * @return true if a log message was given to the handler, false if the journal is empty
+     */
+    synchronized boolean pollOrClose(SavedLogMessageHandler handler) {
+        if (size == 0) {
+            close();
+            return false;
+        }
+
+        while (readRegion == null || readRegion.remaining() < Integer.BYTES || readRegion.getInt(readRegion.position()) == END_OF_REGION) {
+            if (readRegion != null) {
+                regions.set(nextReadRegion - 1, null);
+            }
+
+            readRegion = regions.get(nextReadRegion++).duplicate().clear();
+        }
+
+        readRegion.getInt();
+        var kind = (int) readRegion.get();
+        var level = (int) readRegion.get();
+        var time = readRegion.getLong();
+        var message = getString();
+        var threadName = getString();
+        var servicereference = (kind & SavedLogMessages.WITH_SERVICE_REFERENCE) != 0 ? (ServiceReference<?>) pollReference() : null;
+        var exception = (kind & SavedLogMessages.WITH_EXCEPTION) != 0 ? (Throwable) pollReference() : null;
+        --size; // NOSONAR only written with the journal locked
+        handler.handle(kind, servicereference, level, message, exception, time, threadName);
+        return true;
+    }
+
+    /**
+     * Delete the journal file, dropping any log messages in it.
+     */
+    synchronized void close() {
+        regions.clear();
+        references.clear();
+        writeRegion = null;
+        readRegion = null;
+        nextReadRegion = 0;
+        mappedSize = 0;
+        size = 0;
+        inUse = false;
+        if (channel != null) {
+            try {
+                channel.close();
+            } catch (IOException e) {
+                // Nothing useful to do, the file is deleted below
+            }
+
+            channel = null;
+        }
+
+        if (file != null) {
+            try {
+                Files.deleteIfExists(file);
+            } catch (IOException e) {
+                // The file may still be mapped on some platforms, try again on JVM exit
+                file.toFile().deleteOnExit();
+            }
+
+            file = null;
+        }
+    }
+
+    private boolean ensureRoom(int needed) throws IOException {
+        if (writeRegion != null && writeRegion.remaining() >= needed) {
+            return true;
+        }
+
+        var newRegionSize = Math.max(REGION_SIZE, needed);
+        if (mappedSize + newRegionSize > maximumSize) {
+            return false;
+        }
+
+        if (channel == null) {
+            Files.createDirectories(directory);
+            file = Files.createTempFile(directory, JOURNAL_FILE_PREFIX, JOURNAL_FILE_SUFFIX);
+            channel = FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE);
+            inUse = true;
+        }
+
+        if (writeRegion != null && writeRegion.remaining() >= Integer.BYTES) {
+            writeRegion.putInt(END_OF_REGION);
+        }
+
+        var region = channel.map(FileChannel.MapMode.READ_WRITE, mappedSize, newRegionSize);
+        mappedSize += newRegionSize;
+        regions.add(region);
+        writeRegion = region;
+        return true;
+    }
+
+    private Object pollReference() {
+        var reference = references.poll();
+        return reference != NULL_REFERENCE ? reference : null;
+    }
+
+    private static int stringSize(byte[] bytes) {
+        return Integer.BYTES + (bytes != null ? bytes.length : 0);
+    }
+
+    private void putString(byte[] bytes) {
+        if (bytes == null) {
+            writeRegion.putInt(NULL_STRING);
+        } else {
+            writeRegion.putInt(bytes.length);
+            writeRegion.put(bytes);
+        }
+    }
+
+    private String getString() {
+        var length = readRegion.getInt();
+        if (length == NULL_STRING) {
+            return null;
+        }
+
+        var bytes = new byte[length];
+        readRegion.get(bytes);
+        return new String(bytes, UTF_8);
+    }
+
+    /**
+     * Find the default directory for journal files: the data area of the bundle
+     * holding this class when running in an OSGi framework, and the directory
+     * for temporary files otherwise.
+     */
+    static Path defaultDirectory() {
+        var bundle = FrameworkUtil.getBundle(SavedLogMessageJournal.class);
+        var bundleContext = bundle != null ? bundle.getBundleContext() : null;
+        var dataArea = bundleContext != null ? bundleContext.getDataFile("") : null;
+        if (dataArea != null) {
+            return dataArea.toPath();
+        }
+
+        return Paths.get(System.getProperty("java.io.tmpdir"));
+    }
+
+}
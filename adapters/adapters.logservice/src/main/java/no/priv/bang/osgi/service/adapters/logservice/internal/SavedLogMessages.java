@@ -0,0 +1,668 @@
+/*
+ * Copyright 2026 Steinar Bang
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package no.priv.bang.osgi.service.adapters.logservice.internal;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Supplier;
+
+import org.osgi.framework.ServiceReference;
+import org.osgi.service.log.LogListener;
+import org.osgi.service.log.LogService;
+import org.osgi.service.log.Logger;
+
+import no.priv.bang.osgi.service.adapters.logservice.OverflowPolicy;
+
+/**
+ * A bounded buffer of log messages saved before a {@link LogService}
+ * was available, that can be written to by many threads without locking.
+ *
+ * <p>The log messages aren't stored as one object per message.  Instead
+ * the fields of the log messages are stored in parallel arrays (one array
+ * for the levels, one for the messages, one for the exceptions etc.).  The
+ * arrays are allocated in chunks when the buffer fills up, so an adapter
+ * that saves few messages uses little memory.
+ *
+ * <p>The arrays are used as a ring buffer, where each slot has a sequence
+ * number telling whether the slot is free or holds a message (twice the
+ * position the slot is free for, plus one when it holds a message).  Writers claim
+ * a slot with a compare-and-set on the tail position, fill in the fields,
+ * and then publish the slot by updating its sequence number.  Readers do the
+ * same on the head position.  Writers may also read, because the
+ * {@link OverflowPolicy} may drop the oldest message to make room for a new one.
+ *
+ * <p>With {@link OverflowPolicy#KEEP_WARNINGS_AND_ERRORS} a new warning or
+ * error replaces the oldest saved debug or info message.  The saved messages
+ * older than the replaced one are moved one slot towards the tail, to keep
+ * the messages in order, while the head position is locked by a flag bit, so
+ * that no reader takes a message that is being moved.
+ *
+ * <p>With {@link OverflowPolicy#SPILL_TO_JOURNAL}, log messages that don't
+ * fit in the arrays are written to a {@link SavedLogMessageJournal}, and
+ * are replayed after the log messages in the arrays.
+ *
+ * <p>Dropped messages are counted per log level, and a summary is logged
+ * after the saved messages have been replayed.
+ */
+public class SavedLogMessages {
+
+    /**
+     * Kind of a saved message: which of the {@link LogService} log methods was
+     * called, as bit flags, whether the message is a {@link Supplier} of
+     * the message text, that is only called if the level is enabled when the
+     * message is replayed, and whether the message is a log call on a logger
+     * from the adapter, that is replayed on a logger from the {@link LogService}.
+     */
+    public static final int LEVEL_AND_MESSAGE = 0;
+    public static final int WITH_EXCEPTION = 1;
+    public static final int WITH_SERVICE_REFERENCE = 2;
+    public static final int WITH_SUPPLIER = 4;
+    public static final int WITH_LOGGER_CALL = 8;
+    static final int LOG_METHOD = WITH_EXCEPTION | WITH_SERVICE_REFERENCE;
+
+    static final String FAILED_TO_BUILD_MESSAGE = "Failed to build log message: ";
+    static final String[] LEVEL_NAMES = { "", "error", "warning", "info", "debug" };
+    static final int CHUNK_SHIFT = 10;
+    static final int CHUNK_SIZE = 1 << CHUNK_SHIFT;
+    static final int CHUNK_MASK = CHUNK_SIZE - 1;
+    static final long BLOCK_PARK_NANOS = 100000;
+    private static final VarHandle SEQUENCE = MethodHandles.arrayElementVarHandle(int[].class);
+    private static final long HEAD_LOCKED = Long.MIN_VALUE; // Set in head while messages are moved to make room for a warning or error
+
+    private final int capacity;
+    private final OverflowPolicy overflowPolicy;
+    private final long blockTimeoutNanos;
+    private final Path journalDirectory;
+    private final SavedLogMessageJournal journal;
+    private final AtomicReferenceArray<Chunk> chunks;
+    private final AtomicLong head = new AtomicLong();
+    private final AtomicLong tail = new AtomicLong();
+    private long warningsAndErrorsEnd; // Only accessed with the head locked: the messages from head to here are warnings and errors
+    private final AtomicLongArray droppedPerLevel = new AtomicLongArray(LEVEL_NAMES.length);
+    private final LongAdder droppedCount = new LongAdder();
+
+    /**
+     * Receives the fields of a saved log message taken from the buffer.
+     */
+    @FunctionalInterface
+    public interface SavedLogMessageHandler {
+        void handle(int kind, ServiceReference<?> servicereference, int level, Object message, Throwable exception, long time, String threadName);
+    }
+
+    public SavedLogMessages(int capacity, OverflowPolicy overflowPolicy, Duration blockTimeout, Path journalDirectory) {
+        if (capacity < 1) {
+            throw new IllegalArgumentException("Capacity of saved log message buffer must be at least 1, was " + capacity);
+        }
+
+        this.capacity = capacity;
+        this.overflowPolicy = overflowPolicy;
+        this.blockTimeoutNanos = blockTimeout.toNanos();
+        this.journalDirectory = journalDirectory;
+        this.journal = overflowPolicy == OverflowPolicy.SPILL_TO_JOURNAL ?
+            new SavedLogMessageJournal(journalDirectory != null ? journalDirectory : SavedLogMessageJournal.defaultDirectory(), SavedLogMessageJournal.DEFAULT_MAXIMUM_SIZE, SavedLogMessageJournal.DEFAULT_MAXIMUM_REFERENCES) :
+            null;
+        this.chunks = new AtomicReferenceArray<>((capacity + CHUNK_MASK) >>> CHUNK_SHIFT);
+    }
+
+    public int getCapacity() {
+        return capacity;
+    }
+
+    public OverflowPolicy getOverflowPolicy() {
+        return overflowPolicy;
+    }
+
+    public Duration getBlockTimeout() {
+        return Duration.ofNanos(blockTimeoutNanos);
+    }
+
+    public Path getJournalDirectory() {
+        return journalDirectory;
+    }
+
+    public int size() {
+        var size = (int) Math.max(0, tail.get() - (head.get() & ~HEAD_LOCKED));
+        return journal != null ? size + journal.size() : size;
+    }
+
+    /**
+     * The number of log messages dropped because the buffer was full, since
+     * the buffer was created.  Unlike the dropped messages summary, this count
+     * isn't reset when the saved log messages are replayed.
+     */
+    public long getDroppedCount() {
+        return droppedCount.sum();
+    }
+
+    /**
+     * Save a log message with the current time and the name of the current thread.
+     *
+     * @param kind which log method was called, {@link #LEVEL_AND_MESSAGE} combined with {@link #WITH_EXCEPTION} and {@link #WITH_SERVICE_REFERENCE}
+     * @param servicereference the service reference argument of the log call, or null
+     * @param level the log level
+     * @param message the log message, or a {@link Supplier} of the log message if kind includes {@link #WITH_SUPPLIER}
+     * @param exception the exception argument of the log call, or null
+     */
+    public void add(int kind, ServiceReference<?> servicereference, int level, Object message, Throwable exception) {
+        add(kind, servicereference, level, message, exception, System.currentTimeMillis(), Thread.currentThread().getName());
+    }
+
+    void add(int kind, ServiceReference<?> servicereference, int level, Object message, Throwable exception, long time, String threadName) {
+        if (journal != null && journal.appendIfInUse(kind, servicereference, level, message, exception, time, threadName)) {
+            return; // Older log messages are in the journal, so this one must go there too
+        }
+
+        if (offer(kind, servicereference, level, message, exception, time, threadName)) {
+            return;
+        }
+
+        switch (overflowPolicy) {
+            case DROP_NEWEST:
+                dropped(level);
+                break;
+            case KEEP_WARNINGS_AND_ERRORS:
+                if (level <= LogService.LOG_WARNING) {
+                    replaceOldestDebugOrInfo(kind, servicereference, level, message, exception, time, threadName);
+                } else {
+                    dropped(level);
+                }
+                break;
+            case BLOCK:
+                addWhenRoomOrDrop(kind, servicereference, level, message, exception, time, threadName);
+                break;
+            case SPILL_TO_JOURNAL:
+                if (!journal.append(kind, servicereference, level, message, exception, time, threadName)) {
+                    dropped(level);
+                }
+                break;
+            default:
+                replaceOldest(kind, servicereference, level, message, exception, time, threadName);
+        }
+    }
+
+    /**
+     * Remove the oldest saved log message and give it to a handler.
+     *
+     * @param handler receives the fields of the oldest saved log message
+     * @return true if a log message was given to the handler, false if the buffer is empty
+     */
+    public boolean poll(SavedLogMessageHandler handler) {
+        var position = head.get();
+        while (true) {
+            if (position < 0) {
+                // A writer is moving messages to make room for a warning or error
+                Thread.onSpinWait();
+                position = head.get();
+                continue;
+            }
+
+            var slot = slot(position);
+            var chunk = chunks.get(slot >>> CHUNK_SHIFT);
+            if (chunk == null) {
+                return false;
+            }
+
+            var offset = slot & CHUNK_MASK;
+            var difference = (int) SEQUENCE.getAcquire(chunk.sequences, offset) - published(position);
+            if (difference == 0) {
+                if (head.compareAndSet(position, position + 1)) {
+                    var kind = chunk.kinds[offset];
+                    var servicereference = chunk.servicereferences[offset];
+                    var level = chunk.levels[offset];
+                    var message = chunk.messages[offset];
+                    var exception = chunk.exceptions[offset];
+                    var time = chunk.times[offset];
+                    var threadName = chunk.threadNames[offset];
+                    chunk.clear(offset);
+                    SEQUENCE.setRelease(chunk.sequences, offset, free(position + capacity));
+                    handler.handle(kind, servicereference, level, message, exception, time, threadName);
+                    return true;
+                }
+
+                position = head.get();
+            } else if (difference < 0) {
+                return false;
+            } else {
+                position = head.get();
+            }
+        }
+    }
+
+    /**
+     * Send all saved log messages to a {@link LogService} and empty the buffer,
+     * followed by a summary of the log messages dropped since the last time
+     * the buffer was emptied, if any.
+     *
+     * <p>If the {@link LogService} is also a {@link LogListener}, the saved
+     * log messages are sent as {@link org.osgi.service.log.LogEntry} objects
+     * to {@link LogListener#logged(org.osgi.service.log.LogEntry)}, preserving
+     * the time and thread of the original log call.
+     *
+     * <p>Messages saved as a {@link Supplier} are only built and sent if the
+     * level is enabled for the logger of the {@link LogService} that the
+     * {@link LogService} log methods log to.  Log calls saved from the loggers
+     * of the adapter are made again on loggers from the {@link LogService},
+     * or, when given to a {@link LogListener}, only formatted and sent if the
+     * level is enabled in the logger they would have been made again on.
+     *
+     * <p>Log messages in the journal are sent after the log messages in the
+     * arrays, and the journal file is deleted when it has been emptied.
+     *
+     * @param logservice the {@link LogService} receiving the saved log messages
+     * @return the number of saved log messages sent
+     */
+    public int sendToService(LogService logservice) {
+        SavedLogMessageHandler handler;
+        var levels = loggerForLevels(logservice);
+        if (logservice instanceof LogListener) {
+            var listener = (LogListener) logservice;
+            handler = (kind, servicereference, level, message, exception, time, threadName) -> {
+                if (isEnabledIn(logservice, levels, kind, level, message)) {
+                    listener.logged(logEntry(kind, servicereference, level, message, exception, time, threadName));
+                }
+            };
+        } else {
+            handler = (kind, servicereference, level, message, exception, time, threadName) -> replayToService(logservice, levels, kind, servicereference, level, message, exception);
+        }
+
+        var sent = drainTo(handler);
+        sendDroppedMessagesSummaryToService(logservice);
+        return sent;
+    }
+
+    /**
+     * Move all saved log messages to another buffer, keeping their time and thread.
+     *
+     * @param other the buffer receiving the saved log messages
+     */
+    public void transferTo(SavedLogMessages other) {
+        drainTo(other::add);
+        other.droppedCount.add(droppedCount.sumThenReset());
+    }
+
+    private int drainTo(SavedLogMessageHandler handler) {
+        var drained = 0;
+        while (poll(handler)) {
+            ++drained;
+        }
+
+        if (journal != null) {
+            while (journal.pollOrClose(handler)) {
+                ++drained;
+            }
+        }
+
+        return drained;
+    }
+
+    /**
+     * Free the memory used by the buffer.  Must only be called when the
+     * buffer is empty, and no thread is adding or removing log messages.
+     */
+    public void release() {
+        for (var i = 0; i < chunks.length(); ++i) {
+            chunks.set(i, null);
+        }
+
+        head.set(0);
+        tail.set(0);
+        warningsAndErrorsEnd = 0;
+    }
+
+    /**
+     * Send a log message to a {@link LogService} using the log method the message
+     * was originally logged with.
+     */
+    public static void sendToService(LogService logservice, int kind, ServiceReference<?> servicereference, int level, String message, Throwable exception) {
+        switch (kind & LOG_METHOD) {
+            case WITH_EXCEPTION:
+                logservice.log(level, message, exception);
+                break;
+            case WITH_SERVICE_REFERENCE:
+                logservice.log(servicereference, level, message);
+                break;
+            case WITH_SERVICE_REFERENCE | WITH_EXCEPTION:
+                logservice.log(servicereference, level, message, exception);
+                break;
+            default:
+                logservice.log(level, message);
+        }
+    }
+
+    /**
+     * Send a saved log message to a {@link LogService}.  A saved log call on a
+     * logger is made again on a logger from the {@link LogService}, a
+     * {@link Supplier} is only called if the level is enabled, and other log
+     * messages are sent with the log method they were logged with.
+     *
+     * @param levels the logger telling which levels are enabled, or null if all levels are enabled
+     */
+    public static void replayToService(LogService logservice, Logger levels, int kind, ServiceReference<?> servicereference, int level, Object message, Throwable exception) {
+        if ((kind & WITH_LOGGER_CALL) != 0 && ((SavedLoggerCall) message).replay(logservice)) {
+            return;
+        }
+
+        if ((kind & WITH_SUPPLIER) == 0 || isLevelEnabled(levels, level)) {
+            sendToService(logservice, kind, servicereference, level, messageText(message), exception);
+        }
+    }
+
+    /**
+     * Check if a saved log message would be logged by a {@link LogService},
+     * before building it.  Messages that were saved as text are always logged,
+     * like the log methods of the {@link LogService} do.
+     */
+    private static boolean isEnabledIn(LogService logservice, Logger levels, int kind, int level, Object message) {
+        if ((kind & WITH_LOGGER_CALL) != 0) {
+            return ((SavedLoggerCall) message).isEnabledIn(logservice);
+        }
+
+        return (kind & WITH_SUPPLIER) == 0 || isLevelEnabled(levels, level);
+    }
+
+    private static SavedLogEntry logEntry(int kind, ServiceReference<?> servicereference, int level, Object message, Throwable exception, long time, String threadName) {
+        if ((kind & WITH_LOGGER_CALL) != 0) {
+            var call = (SavedLoggerCall) message;
+            return new SavedLogEntry(servicereference, level, call.getLogLevel(), call.getLoggerName(), call.getBundle(), messageText(call), exception, time, threadName);
+        }
+
+        return new SavedLogEntry(servicereference, level, messageText(message), exception, time, threadName);
+    }
+
+    /**
+     * The text of a saved log message, building it if the message was saved as a {@link Supplier}.
+     */
+    public static String messageText(Object message) {
+        if (message instanceof Supplier) {
+            try {
+                var text = ((Supplier<?>) message).get();
+                return text != null ? text.toString() : null;
+            } catch (RuntimeException e) {
+                return FAILED_TO_BUILD_MESSAGE + e;
+            }
+        }
+
+        return (String) message;
+    }
+
+    /**
+     * Check if a {@link LogService} log level is enabled for a logger.  If there is no logger
+     * all levels are considered enabled.
+     */
+    public static boolean isLevelEnabled(Logger logger, int level) {
+        if (logger == null) {
+            return true;
+        }
+
+        switch (level) {
+            case LogService.LOG_ERROR:
+                return logger.isErrorEnabled();
+            case LogService.LOG_WARNING:
+                return logger.isWarnEnabled();
+            case LogService.LOG_INFO:
+                return logger.isInfoEnabled();
+            case LogService.LOG_DEBUG:
+                return logger.isDebugEnabled();
+            default:
+                return true;
+        }
+    }
+
+    /**
+     * Find the logger that the log methods of a {@link LogService} log to, or null if not available.
+     */
+    static Logger loggerForLevels(LogService logservice) {
+        try {
+            return logservice.getLogger(SavedLogEntry.LOGSERVICE_LOGGER_NAME);
+        } catch (RuntimeException | LinkageError e) { // NOSONAR LogService implementations from before OSGi R7 have no getLogger
+            return null;
+        }
+    }
+
+    void sendDroppedMessagesSummaryToService(LogService logservice) {
+        var dropped = new long[LEVEL_NAMES.length];
+        var totalDropped = 0L;
+        for (var level = 1; level < LEVEL_NAMES.length; ++level) {
+            dropped[level] = droppedPerLevel.getAndSet(level, 0);
+            totalDropped += dropped[level];
+        }
+
+        if (totalDropped > 0) {
+            var summary = new StringBuilder("Dropped ").append(totalDropped).append(" log messages saved before a LogService was available (");
+            for (var level = 1; level < LEVEL_NAMES.length; ++level) {
+                summary.append(LEVEL_NAMES[level]).append(": ").append(dropped[level]).append(level + 1 < LEVEL_NAMES.length ? ", " : ")");
+            }
+
+            logservice.log(LogService.LOG_WARNING, summary.toString());
+        }
+    }
+
+    private boolean offer(int kind, ServiceReference<?> servicereference, int level, Object message, Throwable exception, long time, String threadName) {
+        var position = tail.get();
+        while (true) {
+            var slot = slot(position);
+            var chunk = chunk(slot >>> CHUNK_SHIFT);
+            var offset = slot & CHUNK_MASK;
+            var difference = (int) SEQUENCE.getAcquire(chunk.sequences, offset) - free(position);
+            if (difference == 0) {
+                if (tail.compareAndSet(position, position + 1)) {
+                    chunk.kinds[offset] = (byte) kind;
+                    chunk.servicereferences[offset] = servicereference;
+                    chunk.levels[offset] = (byte) Math.max(Byte.MIN_VALUE, Math.min(Byte.MAX_VALUE, level));
+                    chunk.messages[offset] = message;
+                    chunk.exceptions[offset] = exception;
+                    chunk.times[offset] = time;
+                    chunk.threadNames[offset] = threadName;
+                    SEQUENCE.setRelease(chunk.sequences, offset, published(position));
+                    return true;
+                }
+
+                position = tail.get();
+            } else if (difference < 0) {
+                return false;
+            } else {
+                position = tail.get();
+            }
+        }
+    }
+
+    private void replaceOldest(int kind, ServiceReference<?> servicereference, int level, Object message, Throwable exception, long time, String threadName) {
+        while (!offer(kind, servicereference, level, message, exception, time, threadName)) {
+            if (!poll(this::dropped)) {
+                // The oldest message is still being written by another thread
+                Thread.onSpinWait();
+            }
+        }
+    }
+
+    private void replaceOldestDebugOrInfo(int kind, ServiceReference<?> servicereference, int level, Object message, Throwable exception, long time, String threadName) {
+        while (!offer(kind, servicereference, level, message, exception, time, threadName)) {
+            if (!dropOldestDebugOrInfo()) {
+                // Another thread is dropping a message, or a message has been taken from the buffer
+                Thread.onSpinWait();
+            }
+        }
+    }
+
+    /**
+     * Drop the oldest saved debug or info message, or the oldest saved message
+     * if there are only warnings and errors in the buffer, and move the messages
+     * saved before the dropped message one slot towards the tail.
+     *
+     * @return true if a message was dropped, false if the head is locked by another thread or the buffer isn't full
+     */
+    private boolean dropOldestDebugOrInfo() {
+        var position = head.get();
+        if (position < 0 || !head.compareAndSet(position, position | HEAD_LOCKED)) {
+            return false;
+        }
+
+        var end = tail.get();
+        if (end - position < capacity) {
+            head.set(position);
+            return false;
+        }
+
+        var dropped = position;
+        var scanned = Math.max(position, warningsAndErrorsEnd);
+        while (scanned < end) {
+            if (publishedLevel(scanned) > LogService.LOG_WARNING) {
+                dropped = scanned;
+                break;
+            }
+
+            ++scanned;
+        }
+
+        warningsAndErrorsEnd = scanned < end ? scanned + 1 : end;
+        dropped(publishedLevel(dropped));
+        for (var destination = dropped; destination > position; --destination) {
+            move(destination - 1, destination);
+        }
+
+        var slot = slot(position);
+        var chunk = chunks.get(slot >>> CHUNK_SHIFT);
+        var offset = slot & CHUNK_MASK;
+        chunk.clear(offset);
+        SEQUENCE.setRelease(chunk.sequences, offset, free(position + capacity));
+        head.set(position + 1);
+        return true;
+    }
+
+    /**
+     * The level of the message at a position, waiting for the writer
+     * of the message to publish it if necessary.
+     */
+    private int publishedLevel(long position) {
+        var slot = slot(position);
+        var chunk = chunks.get(slot >>> CHUNK_SHIFT);
+        var offset = slot & CHUNK_MASK;
+        while ((int) SEQUENCE.getAcquire(chunk.sequences, offset) != published(position)) {
+            Thread.onSpinWait();
+        }
+
+        return chunk.levels[offset];
+    }
+
+    private void move(long from, long to) {
+        var fromSlot = slot(from);
+        var fromChunk = chunks.get(fromSlot >>> CHUNK_SHIFT);
+        var fromOffset = fromSlot & CHUNK_MASK;
+        var toSlot = slot(to);
+        var toChunk = chunks.get(toSlot >>> CHUNK_SHIFT);
+        var toOffset = toSlot & CHUNK_MASK;
+        toChunk.kinds[toOffset] = fromChunk.kinds[fromOffset];
+        toChunk.servicereferences[toOffset] = fromChunk.servicereferences[fromOffset];
+        toChunk.levels[toOffset] = fromChunk.levels[fromOffset];
+        toChunk.messages[toOffset] = fromChunk.messages[fromOffset];
+        toChunk.exceptions[toOffset] = fromChunk.exceptions[fromOffset];
+        toChunk.times[toOffset] = fromChunk.times[fromOffset];
+        toChunk.threadNames[toOffset] = fromChunk.threadNames[fromOffset];
+    }
+
+    private void addWhenRoomOrDrop(int kind, ServiceReference<?> servicereference, int level, Object message, Throwable exception, long time, String threadName) {
+        var deadline = System.nanoTime() + blockTimeoutNanos;
+        while (deadline - System.nanoTime() > 0 && !Thread.currentThread().isInterrupted()) {
+            LockSupport.parkNanos(BLOCK_PARK_NANOS);
+            if (offer(kind, servicereference, level, message, exception, time, threadName)) {
+                return;
+            }
+        }
+
+        dropped(level);
+    }
+
+    private void dropped(int kind, ServiceReference<?> servicereference, int level, Object message, Throwable exception, long time, String threadName) {
+        dropped(level);
+    }
+
+    private void dropped(int level) {
+        droppedPerLevel.incrementAndGet(levelIndex(level));
+        droppedCount.increment();
+    }
+
+    private int slot(long position) {
+        return (int) (position % capacity);
+    }
+
+    private static int free(long position) {
+        return (int) (position << 1);
+    }
+
+    private static int published(long position) {
+        return free(position) + 1;
+    }
+
+    private Chunk chunk(int index) {
+        var chunk = chunks.get(index);
+        if (chunk == null) {
+            var firstSlot = index << CHUNK_SHIFT;
+            chunks.compareAndSet(index, null, new Chunk(firstSlot, Math.min(CHUNK_SIZE, capacity - firstSlot)));
+            chunk = chunks.get(index);
+        }
+
+        return chunk;
+    }
+
+    static int levelIndex(int level) {
+        return Math.max(LogService.LOG_ERROR, Math.min(LogService.LOG_DEBUG, level));
+    }
+
+    /**
+     * A chunk of slots of the ring buffer, with one array for each field of
+     * the saved log messages.
+     */
+    static final class Chunk {
+        final int[] sequences;
+        final byte[] kinds;
+        final byte[] levels;
+        final ServiceReference<?>[] servicereferences;
+        final Object[] messages;
+        final Throwable[] exceptions;
+        final long[] times;
+        final String[] threadNames;
+
+        Chunk(int firstSlot, int size) {
+            sequences = new int[size];
+            for (var i = 0; i < size; ++i) {
+                sequences[i] = free(firstSlot + (long) i);
+            }
+
+            kinds = new byte[size];
+            levels = new byte[size];
+            servicereferences = new ServiceReference<?>[size];
+            messages = new Object[size];
+            exceptions = new Throwable[size];
+            times = new long[size];
+            threadNames = new String[size];
+        }
+
+        void clear(int offset) {
+            servicereferences[offset] = null;
+            messages[offset] = null;
+            exceptions[offset] = null;
+            threadNames[offset] = null;
+        }
+    }
+
+}
@@ -0,0 +1,108 @@
+/*
+ * Copyright 2026 Steinar Bang
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package no.priv.bang.osgi.service.adapters.logservice.internal;
+
+import java.util.function.Supplier;
+
+import org.osgi.framework.Bundle;
+import org.osgi.service.log.LogLevel;
+import org.osgi.service.log.LogService;
+import org.osgi.service.log.LoggerConsumer;
+
+/**
+ * A call to a {@link LogServiceAdapterLogger} saved before there was a
+ * {@link LogService}, holding the format and the arguments of the call
+ * without formatting them, or the {@link LoggerConsumer} of the call.
+ *
+ * <p>This is saved as the message of a saved log message.  It is a
+ * {@link Supplier} of the formatted message, for the places where the
+ * saved log message can't be replayed on a logger, e.g. when it is
+ * given to a {@link org.osgi.service.log.LogListener} or written to a
+ * journal file.
+ */
+class SavedLoggerCall implements Supplier<String> {
+
+    private final LogServiceAdapterLogger logger;
+    private final LogLevel logLevel;
+    private final String format;
+    private final Object[] arguments;
+    private final int count;
+    private final LoggerConsumer<?> consumer;
+
+    /**
+     * @param logger the logger the call was made on
+     * @param logLevel the level of the logger method called
+     * @param format the format, or the message of the log methods without arguments
+     * @param arguments all arguments of the call, or null for the log methods without arguments
+     * @param count the number of arguments used for formatting
+     */
+    SavedLoggerCall(LogServiceAdapterLogger logger, LogLevel logLevel, String format, Object[] arguments, int count) {
+        this.logger = logger;
+        this.logLevel = logLevel;
+        this.format = format;
+        this.arguments = arguments;
+        this.count = count;
+        this.consumer = null;
+    }
+
+    /**
+     * @param logger the logger the call was made on
+     * @param logLevel the level of the logger method called
+     * @param consumer the consumer given to the logger method
+     */
+    SavedLoggerCall(LogServiceAdapterLogger logger, LogLevel logLevel, LoggerConsumer<?> consumer) {
+        this.logger = logger;
+        this.logLevel = logLevel;
+        this.format = null;
+        this.arguments = null;
+        this.count = 0;
+        this.consumer = consumer;
+    }
+
+    LogLevel getLogLevel() {
+        return logLevel;
+    }
+
+    String getLoggerName() {
+        return logger.getName();
+    }
+
+    Bundle getBundle() {
+        return logger.getBundle();
+    }
+
+    /**
+     * Make the call again on the logger of a {@link LogService}.
+     *
+     * @return false if the {@link LogService} has no loggers
+     */
+    boolean replay(LogService logservice) {
+        return logger.replay(logservice, logLevel, format, arguments, consumer);
+    }
+
+    /**
+     * Check if the call would be logged by the logger of a {@link LogService}.
+     */
+    boolean isEnabledIn(LogService logservice) {
+        return logger.isEnabledIn(logservice, logLevel);
+    }
+
+    @Override
+    public String get() {
+        return consumer != null ? logger.consumerText(consumer) : logger.format(format, arguments, count);
+    }
+
+}
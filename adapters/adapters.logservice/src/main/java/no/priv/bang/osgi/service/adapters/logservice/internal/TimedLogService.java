@@ -0,0 +1,126 @@
+/*
+ * Copyright 2026 Steinar Bang
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package no.priv.bang.osgi.service.adapters.logservice.internal;
+
+import org.osgi.framework.Bundle;
+import org.osgi.framework.ServiceReference;
+import org.osgi.service.log.FormatterLogger;
+import org.osgi.service.log.LogService;
+import org.osgi.service.log.Logger;
+
+/**
+ * A {@link LogService} that records the time each log call on another
+ * {@link LogService}, and on its {@link Logger}s, takes in a
+ * {@link LatencyHistogram}, to show when the {@link LogService} is what
+ * makes logging slow.
+ *
+ * <p>A LogServiceAdapter only puts this in front of the {@link LogService}
+ * when latency recording is enabled, so that logging without latency
+ * recording doesn't pay for it.
+ */
+@SuppressWarnings("rawtypes")
+public class TimedLogService implements LogService {
+
+    private final LogService logservice;
+    private final LatencyHistogram latency;
+
+    public TimedLogService(LogService logservice, LatencyHistogram latency) {
+        this.logservice = logservice;
+        this.latency = latency;
+    }
+
+    public LogService getLogService() {
+        return logservice;
+    }
+
+    @Override
+    public void log(int level, String message) {
+        var start = System.nanoTime();
+        try {
+            logservice.log(level, message);
+        } finally {
+            latency.record(System.nanoTime() - start);
+        }
+    }
+
+    @Override
+    public void log(int level, String message, Throwable exception) {
+        var start = System.nanoTime();
+        try {
+            logservice.log(level, message, exception);
+        } finally {
+            latency.record(System.nanoTime() - start);
+        }
+    }
+
+    @Override
+    public void log(ServiceReference sr, int level, String message) {
+        var start = System.nanoTime();
+        try {
+            logservice.log(sr, level, message);
+        } finally {
+            latency.record(System.nanoTime() - start);
+        }
+    }
+
+    @Override
+    public void log(ServiceReference sr, int level, String message, Throwable exception) {
+        var start = System.nanoTime();
+        try {
+            logservice.log(sr, level, message, exception);
+        } finally {
+            latency.record(System.nanoTime() - start);
+        }
+    }
+
+    @Override
+    public Logger getLogger(String name) {
+        return timed(logservice.getLogger(name));
+    }
+
+    @Override
+    public Logger getLogger(Class<?> clazz) {
+        return timed(logservice.getLogger(clazz));
+    }
+
+    @Override
+    public <L extends Logger> L getLogger(String name, Class<L> loggerType) {
+        return timed(logservice.getLogger(name, loggerType), loggerType);
+    }
+
+    @Override
+    public <L extends Logger> L getLogger(Class<?> clazz, Class<L> loggerType) {
+        return timed(logservice.getLogger(clazz, loggerType), loggerType);
+    }
+
+    @Override
+    public <L extends Logger> L getLogger(Bundle bundle, String name, Class<L> loggerType) {
+        return timed(logservice.getLogger(bundle, name, loggerType), loggerType);
+    }
+
+    private Logger timed(Logger logger) {
+        return logger != null ? new TimedLogger(logger, latency) : null;
+    }
+
+    private <L extends Logger> L timed(L logger, Class<L> loggerType) {
+        if (logger == null || !LogServiceAdapterLogger.isSupportedLoggerType(loggerType)) {
+            return logger; // Other logger types may have methods the timed logger doesn't have
+        }
+
+        return loggerType.cast(new TimedLogger(logger, latency));
+    }
+
+}
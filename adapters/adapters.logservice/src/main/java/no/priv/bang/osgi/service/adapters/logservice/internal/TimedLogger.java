@@ -0,0 +1,358 @@
+/*
+ * Copyright 2026 Steinar Bang
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package no.priv.bang.osgi.service.adapters.logservice.internal;
+
+import org.osgi.service.log.FormatterLogger;
+import org.osgi.service.log.Logger;
+import org.osgi.service.log.LoggerConsumer;
+
+/**
+ * A {@link Logger} that records the time each log call on another
+ * {@link Logger} takes in a {@link LatencyHistogram}.  Given out by
+ * {@link TimedLogService}, also for {@link FormatterLogger}s, since the
+ * log methods are the same and the formatting is done by the wrapped logger.
+ */
+class TimedLogger implements FormatterLogger {
+
+    private final Logger logger;
+    private final LatencyHistogram latency;
+
+    TimedLogger(Logger logger, LatencyHistogram latency) {
+        this.logger = logger;
+        this.latency = latency;
+    }
+
+    @Override
+    public String getName() {
+        return logger.getName();
+    }
+
+    @Override
+    public boolean isTraceEnabled() {
+        return logger.isTraceEnabled();
+    }
+
+    @Override
+    public void trace(String message) {
+        var start = System.nanoTime();
+        try {
+            logger.trace(message);
+        } finally {
+            latency.record(System.nanoTime() - start);
+        }
+    }
+
+    @Override
+    public void trace(String format, Object arg) {
+        var start = System.nanoTime();
+        try {
+            logger.trace(format, arg);
+        } finally {
+            latency.record(System.nanoTime() - start);
+        }
+    }
+
+    @Override
+    public void trace(String format, Object arg1, Object arg2) {
+        var start = System.nanoTime();
+        try {
+            logger.trace(format, arg1, arg2);
+        } finally {
+            latency.record(System.nanoTime() - start);
+        }
+    }
+
+    @Override
+    public void trace(String format, Object... arguments) {
+        var start = System.nanoTime();
+        try {
+            logger.trace(format, arguments);
+        } finally {
+            latency.record(System.nanoTime() - start);
+        }
+    }
+
+    @Override
+    public <E extends Exception> void trace(LoggerConsumer<E> consumer) throws E {
+        var start = System.nanoTime();
+        try {
+            logger.trace(consumer);
+        } finally {
+            latency.record(System.nanoTime() - start);
+        }
+    }
+
+    @Override
+    public boolean isDebugEnabled() {
+        return logger.isDebugEnabled();
+    }
+
+    @Override
+    public void debug(String message) {
+        var start = System.nanoTime();
+        try {
+            logger.debug(message);
+        } finally {
+            latency.record(System.nanoTime() - start);
+        }
+    }
+
+    @Override
+    public void debug(String format, Object arg) {
+        var start = System.nanoTime();
+        try {
+            logger.debug(format, arg);
+        } finally {
+            latency.record(System.nanoTime() - start);
+        }
+    }
+
+    @Override
+    public void debug(String format, Object arg1, Object arg2) {
+        var start = System.nanoTime();
+        try {
+            logger.debug(format, arg1, arg2);
+        } finally {
+            latency.record(System.nanoTime() - start);
+        }
+    }
+
+    @Override
+    public void debug(String format, Object... arguments) {
+        var start = System.nanoTime();
+        try {
+            logger.debug(format, arguments);
+        } finally {
+            latency.record(System.nanoTime() - start);
+        }
+    }
+
+    @Override
+    public <E extends Exception> void debug(LoggerConsumer<E> consumer) throws E {
+        var start = System.nanoTime();
+        try {
+            logger.debug(consumer);
+        } finally {
+            latency.record(System.nanoTime() - start);
+        }
+    }
+
+    @Override
+    public boolean isInfoEnabled() {
+        return logger.isInfoEnabled();
+    }
+
+    @Override
+    public void info(String message) {
+        var start = System.nanoTime();
+        try {
+            logger.info(message);
+        } finally {
+            latency.record(System.nanoTime() - start);
+        }
+    }
+
+    @Override
+    public void info(String format, Object arg) {
+        var start = System.nanoTime();
+        try {
+            logger.info(format, arg);
+        } finally {
+            latency.record(System.nanoTime() - start);
+        }
+    }
+
+    @Override
+    public void info(String format, Object arg1, Object arg2) {
+        var start = System.nanoTime();
+        try {
+            logger.info(format, arg1, arg2);
+        } finally {
+            latency.record(System.nanoTime() - start);
+        }
+    }
+
+    @Override
+    public void info(String format, Object... arguments) {
+        var start = System.nanoTime();
+        try {
+            logger.info(format, arguments);
+        } finally {
+            latency.record(System.nanoTime() - start);
+        }
+    }
+
+    @Override
+    public <E extends Exception> void info(LoggerConsumer<E> consumer) throws E {
+        var start = System.nanoTime();
+        try {
+            logger.info(consumer);
+        } finally {
+            latency.record(System.nanoTime() - start);
+        }
+    }
+
+    @Override
+    public boolean isWarnEnabled() {
+        return logger.isWarnEnabled();
+    }
+
+    @Override
+    public void warn(String message) {
+        var start = System.nanoTime();
+        try {
+            logger.warn(message);
+        } finally {
+            latency.record(System.nanoTime() - start);
+        }
+    }
+
+    @Override
+    public void warn(String format, Object arg) {
+        var start = System.nanoTime();
+        try {
+            logger.warn(format, arg);
+        } finally {
+            latency.record(System.nanoTime() - start);
+        }
+    }
+
+    @Override
+    public void warn(String format, Object arg1, Object arg2) {
+        var start = System.nanoTime();
+        try {
+            logger.warn(format, arg1, arg2);
+        } finally {
+            latency.record(System.nanoTime() - start);
+        }
+    }
+
+    @Override
+    public void warn(String format, Object... arguments) {
+        var start = System.nanoTime();
+        try {
+            logger.warn(format, arguments);
+        } finally {
+            latency.record(System.nanoTime() - start);
+        }
+    }
+
+    @Override
+    public <E extends Exception> void warn(LoggerConsumer<E> consumer) throws E {
+        var start = System.nanoTime();
+        try {
+            logger.warn(consumer);
+        } finally {
+            latency.record(System.nanoTime() - start);
+        }
+    }
+
+    @Override
+    public boolean isErrorEnabled() {
+        return logger.isErrorEnabled();
+    }
+
+    @Override
+    public void error(String message) {
+        var start = System.nanoTime();
+        try {
+            logger.error(message);
+        } finally {
+            latency.record(System.nanoTime() - start);
+        }
+    }
+
+    @Override
+    public void error(String format, Object arg) {
+        var start = System.nanoTime();
+        try {
+            logger.error(format, arg);
+        } finally {
+            latency.record(System.nanoTime() - start);
+        }
+    }
+
+    @Override
+    public void error(String format, Object arg1, Object arg2) {
+        var start = System.nanoTime();
+        try {
+            logger.error(format, arg1, arg2);
+        } finally {
+            latency.record(System.nanoTime() - start);
+        }
+    }
+
+    @Override
+    public void error(String format, Object... arguments) {
+        var start = System.nanoTime();
+        try {
+            logger.error(format, arguments);
+        } finally {
+            latency.record(System.nanoTime() - start);
+        }
+    }
+
+    @Override
+    public <E extends Exception> void error(LoggerConsumer<E> consumer) throws E {
+        var start = System.nanoTime();
+        try {
+            logger.error(consumer);
+        } finally {
+            latency.record(System.nanoTime() - start);
+        }
+    }
+
+    @Override
+    public void audit(String message) {
+        var start = System.nanoTime();
+        try {
+            logger.audit(message);
+        } finally {
+            latency.record(System.nanoTime() - start);
+        }
+    }
+
+    @Override
+    public void audit(String format, Object arg) {
+        var start = System.nanoTime();
+        try {
+            logger.audit(format, arg);
+        } finally {
+            latency.record(System.nanoTime() - start);
+        }
+    }
+
+    @Override
+    public void audit(String format, Object arg1, Object arg2) {
+        var start = System.nanoTime();
+        try {
+            logger.audit(format, arg1, arg2);
+        } finally {
+            latency.record(System.nanoTime() - start);
+        }
+    }
+
+    @Override
+    public void audit(String format, Object... arguments) {
+        var start = System.nanoTime();
+        try {
+            logger.audit(format, arguments);
+        } finally {
+            latency.record(System.nanoTime() - start);
+        }
+    }
+
+}
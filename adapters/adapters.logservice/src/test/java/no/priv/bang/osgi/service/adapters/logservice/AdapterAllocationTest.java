@@ -0,0 +1,97 @@
+/*
+ * Copyright 2021-2026 Steinar Bang
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package no.priv.bang.osgi.service.adapters.logservice;
+
+import static no.priv.bang.osgi.service.mocks.measurement.HeapMeasurement.*;
+import static org.junit.jupiter.api.Assertions.*;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.osgi.service.log.LogService;
+
+import no.priv.bang.osgi.service.mocks.logservice.MockLogService;
+
+/**
+ * Checks the number of bytes allocated by the hot paths of the adapters,
+ * measured with {@link com.sun.management.ThreadMXBean#getThreadAllocatedBytes(long)},
+ * so that e.g. an accidental boxing or varargs array fails the build.
+ * The measurement is done by {@link no.priv.bang.osgi.service.mocks.measurement.HeapMeasurement},
+ * shared with the allocation test of the DataSource adapter.
+ */
+class AdapterAllocationTest {
+
+    static final long DISABLED_LEVEL_BUDGET = 0;
+    static final long LIVE_LOG_BUDGET = 0;
+
+    @BeforeEach
+    void assumeAllocatedBytesCanBeMeasured() {
+        assumeTrue(canMeasureAllocatedBytes(), "Allocated bytes can't be measured on this JVM");
+    }
+
+    @Test
+    void testLoggerAdapterDebugWithDebugDisabled() {
+        var logservice = new MockLogService();
+        logservice.setTraceEnabled(false);
+        logservice.setDebugEnabled(false);
+        var adapter = new LoggerAdapter(AdapterAllocationTest.class);
+        adapter.setLogService(logservice);
+        Object argument = "argument";
+
+        var bytesPerCall = allocatedBytesPerCall(() -> adapter.debug("Message {}", argument));
+
+        assertEquals(DISABLED_LEVEL_BUDGET, bytesPerCall);
+        assertEquals(0, logservice.getLogmessages().size());
+    }
+
+    @Test
+    void testLogServiceAdapterLogWhenLive() {
+        var logservice = new DiscardingLogService();
+        var adapter = new LogServiceAdapter();
+        adapter.setLogService(logservice);
+
+        var bytesPerCall = allocatedBytesPerCall(() -> adapter.log(LogService.LOG_INFO, "Message"));
+
+        assertEquals(LIVE_LOG_BUDGET, bytesPerCall);
+        assertEquals(WARMUP_CALLS + MEASURED_CALLS, logservice.messageCount);
+    }
+
+    @Test
+    void testLogServiceAdapterLogWhenLiveWithMetrics() {
+        var logservice = new DiscardingLogService();
+        var adapter = new LogServiceAdapter().setMetricsEnabled(true);
+        adapter.setLogService(logservice);
+
+        var bytesPerCall = allocatedBytesPerCall(() -> adapter.log(LogService.LOG_INFO, "Message"));
+
+        assertEquals(LIVE_LOG_BUDGET, bytesPerCall);
+        assertEquals(WARMUP_CALLS + MEASURED_CALLS, adapter.getMetrics().getInfoCount());
+    }
+
+    /**
+     * A {@link MockLogService} that only counts the log messages, so that
+     * the allocations of the mock aren't measured.
+     */
+    static class DiscardingLogService extends MockLogService {
+        long messageCount;
+
+        @Override
+        public void log(int level, String message) {
+            ++messageCount;
+        }
+    }
+
+}
@@ -0,0 +1,144 @@
+/*
+ * Copyright 2021-2026 Steinar Bang
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package no.priv.bang.osgi.service.adapters.logservice;
+
+import static no.priv.bang.osgi.service.mocks.measurement.HeapMeasurement.*;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.openjdk.jol.info.ClassLayout;
+import org.openjdk.jol.info.GraphLayout;
+import org.osgi.service.log.LogService;
+import org.osgi.service.log.Logger;
+
+import no.priv.bang.osgi.service.adapters.logservice.internal.SavedLogEntry;
+import no.priv.bang.osgi.service.mocks.logservice.MockLogService;
+
+/**
+ * Pins the heap footprint of the adapters, and of the log messages they
+ * save, measured with Java Object Layout.  An application may have hundreds
+ * of components each holding adapters, so a footprint regression is multiplied.
+ *
+ * <p>The footprint of an adapter is what one more adapter adds to the heap,
+ * i.e. the objects reachable from the adapter that aren't shared with other
+ * adapters, such as classes, enum constants and string literals.
+ *
+ * <p>The adapters create their buffers, logger caches and loggers on first
+ * use, so the budgets of the adapters are for the fields that are always
+ * present, and are kept close to the footprint of the adapters before they
+ * got buffers and caches (48 bytes for a LogServiceAdapter and 24 bytes for
+ * a LoggerAdapter).
+ *
+ * <p>The budgets are for a 64 bit JVM with compressed references, which is
+ * the default for heaps smaller than 32GB, and the tests are skipped on other JVMs.
+ */
+class AdapterFootprintTest {
+
+    static final long SAVED_LOG_ENTRY_BUDGET = 56;
+    static final long SAVED_LOGGER_CALL_BUDGET = 40;
+    static final long CHUNK_BUDGET = 48;
+    static final long LOGSERVICE_ADAPTER_BUDGET = 128;
+    static final long LOGGER_ADAPTER_BUDGET = 48;
+    static final long BUFFERED_MESSAGE_BUDGET = 32;
+    static final long BUFFERED_LOGGER_CALL_BUDGET = 104;
+    static final int BUFFERED_MESSAGES = 10240;
+    static final int BUFFERED_LOGGER_CALLS = 1000;
+
+    static {
+        // Let JOL find field offsets in lambdas held by the adapters, set before JOL is loaded
+        System.setProperty("jol.magicFieldOffset", "true");
+    }
+
+    @BeforeEach
+    void assumeCompressedReferences() {
+        assumeTrue(hasCompressedReferences(), "Footprint budgets are for compressed references");
+    }
+
+    @Test
+    void testSavedLogMessageClassSizes() throws Exception {
+        var internal = SavedLogEntry.class.getPackageName();
+        assertThat(ClassLayout.parseClass(SavedLogEntry.class).instanceSize()).isLessThanOrEqualTo(SAVED_LOG_ENTRY_BUDGET);
+        assertThat(ClassLayout.parseClass(Class.forName(internal + ".SavedLoggerCall")).instanceSize()).isLessThanOrEqualTo(SAVED_LOGGER_CALL_BUDGET);
+        assertThat(ClassLayout.parseClass(Class.forName(internal + ".SavedLogMessages$Chunk")).instanceSize()).isLessThanOrEqualTo(CHUNK_BUDGET);
+    }
+
+    @Test
+    void testLogServiceAdapterFootprint() {
+        assertThat(footprintPerInstance(LogServiceAdapter::new)).isLessThanOrEqualTo(LOGSERVICE_ADAPTER_BUDGET);
+    }
+
+    @Test
+    void testLogServiceAdapterWithLogServiceFootprint() {
+        var logservice = new MockLogService();
+        assertThat(footprintPerInstance(() -> {
+            var adapter = new LogServiceAdapter();
+            adapter.setLogService(logservice);
+            adapter.log(LogService.LOG_INFO, "Not saved");
+            return adapter;
+        })).isLessThanOrEqualTo(LOGSERVICE_ADAPTER_BUDGET);
+    }
+
+    @Test
+    void testLoggerAdapterFootprint() {
+        assertThat(footprintPerInstance(() -> new LoggerAdapter(AdapterFootprintTest.class))).isLessThanOrEqualTo(LOGGER_ADAPTER_BUDGET);
+    }
+
+    @Test
+    void testLoggerAdapterWithLogServiceFootprint() {
+        var logservice = new MockLogService() {
+            // Share the logger between the adapters, like a LogService caching its loggers
+            private final Logger logger = super.getLogger(AdapterFootprintTest.class);
+
+            @Override
+            public Logger getLogger(Class<?> clazz) {
+                return logger;
+            }
+        };
+        assertThat(footprintPerInstance(() -> {
+            var adapter = new LoggerAdapter(AdapterFootprintTest.class);
+            adapter.setLogService(logservice);
+            adapter.info("Not saved");
+            return adapter;
+        })).isLessThanOrEqualTo(LOGGER_ADAPTER_BUDGET);
+    }
+
+    @Test
+    void testFootprintOfBufferedLogMessages() {
+        var empty = new LogServiceAdapter().setBufferCapacity(BUFFERED_MESSAGES);
+        var buffering = new LogServiceAdapter().setBufferCapacity(BUFFERED_MESSAGES);
+        for (var i = 0; i < BUFFERED_MESSAGES; ++i) {
+            buffering.log(LogService.LOG_INFO, "Saved message");
+        }
+
+        var footprint = GraphLayout.parseInstance(buffering).totalSize() - GraphLayout.parseInstance(empty).totalSize();
+        assertThat(footprint / BUFFERED_MESSAGES).isLessThanOrEqualTo(BUFFERED_MESSAGE_BUDGET);
+    }
+
+    @Test
+    void testFootprintOfBufferedLoggerCalls() {
+        var empty = new LoggerAdapter(AdapterFootprintTest.class);
+        var buffering = new LoggerAdapter(AdapterFootprintTest.class);
+        for (var i = 0; i < BUFFERED_LOGGER_CALLS; ++i) {
+            buffering.info("Saved message {}", "argument");
+        }
+
+        var footprint = GraphLayout.parseInstance(buffering).totalSize() - GraphLayout.parseInstance(empty).totalSize();
+        assertThat(footprint / BUFFERED_LOGGER_CALLS).isLessThanOrEqualTo(BUFFERED_LOGGER_CALL_BUDGET);
+    }
+
+}
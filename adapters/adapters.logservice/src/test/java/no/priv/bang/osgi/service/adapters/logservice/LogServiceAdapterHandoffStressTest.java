@@ -0,0 +1,207 @@
+/*
+ * Copyright 2026 Steinar Bang
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package no.priv.bang.osgi.service.adapters.logservice;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.Consumer;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.osgi.framework.Bundle;
+import org.osgi.framework.ServiceReference;
+import org.osgi.service.log.LogService;
+import org.osgi.service.log.Logger;
+
+/**
+ * A jcstress style harness for the handoff from saving log messages to
+ * passing them directly to the {@link LogService}.
+ *
+ * <p>Each round runs some producer actors logging through a new
+ * {@link LogServiceAdapter}, racing against an actor setting the
+ * {@link LogService}, all released at the same time by a barrier.
+ * When all actors are done, the arbiter checks the outcome: all log
+ * messages must have reached the {@link LogService} exactly once, and
+ * the log messages of each producer must have arrived in the order they
+ * were logged.
+ */
+class LogServiceAdapterHandoffStressTest {
+
+    static final int ROUNDS = 1000;
+    static final int PRODUCERS = 3;
+    static final int MESSAGES_PER_PRODUCER = 50;
+    static final long ASYNCHRONOUS_REPLAY_TIMEOUT_MILLIS = 10000;
+    static final Duration BLOCK_TIMEOUT = Duration.ofMinutes(1); // Long enough that only a handoff bug drops messages on a loaded machine
+
+    private ExecutorService actors;
+
+    @BeforeEach
+    void startActors() {
+        actors = Executors.newFixedThreadPool(PRODUCERS + 1);
+    }
+
+    @AfterEach
+    void stopActors() {
+        actors.shutdownNow();
+    }
+
+    @Test
+    void testHandoffWithSynchronousReplay() throws Exception {
+        runRounds(adapter -> { });
+    }
+
+    @Test
+    void testHandoffWithAsynchronousReplay() throws Exception {
+        runRounds(adapter -> adapter.setAsynchronousReplay(true));
+    }
+
+    @Test
+    void testHandoffWithSmallBlockingBuffer() throws Exception {
+        runRounds(adapter -> adapter.setBufferCapacity(4).setOverflowPolicy(OverflowPolicy.BLOCK).setBlockTimeout(BLOCK_TIMEOUT));
+    }
+
+    @Test
+    void testHandoffWithAsynchronousDispatch() throws Exception {
+        runRounds(adapter -> adapter.setAsynchronousDispatch(true).setDispatchQueueCapacity(8));
+    }
+
+    private void runRounds(Consumer<LogServiceAdapter> configuration) throws Exception {
+        for (var round = 0; round < ROUNDS; ++round) {
+            var adapter = new LogServiceAdapter();
+            configuration.accept(adapter);
+            var logservice = new RecordingLogService();
+            var startSignal = new CyclicBarrier(PRODUCERS + 1);
+            var results = new ArrayList<Future<Void>>();
+            for (var producer = 0; producer < PRODUCERS; ++producer) {
+                results.add(actors.submit(producerActor(adapter, startSignal, producer)));
+            }
+
+            results.add(actors.submit(() -> {
+                startSignal.await();
+                adapter.setLogService(logservice);
+                return null;
+            }));
+
+            for (var result : results) {
+                result.get();
+            }
+
+            arbiter(round, logservice);
+            adapter.close();
+        }
+    }
+
+    private Callable<Void> producerActor(LogServiceAdapter adapter, CyclicBarrier startSignal, int producer) {
+        return () -> {
+            startSignal.await();
+            for (var i = 0; i < MESSAGES_PER_PRODUCER; ++i) {
+                adapter.log(LogService.LOG_INFO, producer + ":" + i);
+            }
+
+            return null;
+        };
+    }
+
+    private void arbiter(int round, RecordingLogService logservice) throws InterruptedException {
+        var expectedNumberOfMessages = PRODUCERS * MESSAGES_PER_PRODUCER;
+        var deadline = System.currentTimeMillis() + ASYNCHRONOUS_REPLAY_TIMEOUT_MILLIS;
+        while (logservice.size() < expectedNumberOfMessages && System.currentTimeMillis() < deadline) {
+            Thread.sleep(1);
+        }
+
+        var messages = logservice.messages();
+        assertEquals(expectedNumberOfMessages, messages.size(), "Lost or duplicated log messages in round " + round);
+        var nextMessageNumbers = new int[PRODUCERS];
+        for (var message : messages) {
+            var producerAndMessageNumber = message.split(":");
+            var producer = Integer.parseInt(producerAndMessageNumber[0]);
+            var messageNumber = Integer.parseInt(producerAndMessageNumber[1]);
+            assertEquals(nextMessageNumbers[producer], messageNumber, "Reordered or duplicated log messages in round " + round);
+            nextMessageNumbers[producer] = messageNumber + 1;
+        }
+    }
+
+    /**
+     * Thread safe {@link LogService} recording the messages logged to it.
+     */
+    @SuppressWarnings("rawtypes")
+    static class RecordingLogService implements LogService {
+        private final List<String> messages = new ArrayList<>();
+
+        synchronized int size() {
+            return messages.size();
+        }
+
+        synchronized List<String> messages() {
+            return new ArrayList<>(messages);
+        }
+
+        @Override
+        public synchronized void log(int level, String message) {
+            messages.add(message);
+        }
+
+        @Override
+        public synchronized void log(int level, String message, Throwable exception) {
+            messages.add(message);
+        }
+
+        @Override
+        public synchronized void log(ServiceReference sr, int level, String message) {
+            messages.add(message);
+        }
+
+        @Override
+        public synchronized void log(ServiceReference sr, int level, String message, Throwable exception) {
+            messages.add(message);
+        }
+
+        @Override
+        public Logger getLogger(String name) {
+            return null;
+        }
+
+        @Override
+        public Logger getLogger(Class<?> clazz) {
+            return null;
+        }
+
+        @Override
+        public <L extends Logger> L getLogger(String name, Class<L> loggerType) {
+            return null;
+        }
+
+        @Override
+        public <L extends Logger> L getLogger(Class<?> clazz, Class<L> loggerType) {
+            return null;
+        }
+
+        @Override
+        public <L extends Logger> L getLogger(Bundle bundle, String name, Class<L> loggerType) {
+            return null;
+        }
+    }
+
+}
@@ -1,5 +1,5 @@
 /*
- * Copyright 2017-2024 Steinar Bang
+ * Copyright 2017-2026 Steinar Bang
  *
  * Licensed under the Apache License, Version 2.0 (the "License");
  * you may not use this file except in compliance with the License.
@@ -15,14 +15,35 @@
  */
 package no.priv.bang.osgi.service.adapters.logservice;
 
+import static org.assertj.core.api.Assertions.assertThat;
 import static org.junit.jupiter.api.Assertions.*;
 import static org.mockito.Mockito.*;
 
+import java.lang.management.ManagementFactory;
+import java.nio.file.Files;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
 import org.junit.jupiter.api.Test;
 import org.osgi.framework.Bundle;
 import org.osgi.framework.ServiceReference;
 import org.osgi.service.log.FormatterLogger;
+import org.osgi.service.log.LogEntry;
+import org.osgi.service.log.LogLevel;
+import org.osgi.service.log.LogListener;
 import org.osgi.service.log.LogService;
+import org.osgi.service.log.Logger;
+
+import no.priv.bang.osgi.service.adapters.logservice.internal.LatencyHistogram;
 import no.priv.bang.osgi.service.mocks.logservice.MockLogService;
 
 class LogServiceAdapterTest {
@@ -95,6 +116,504 @@ class LogServiceAdapterTest {
         assertEquals(4, logservice.getLogmessages().size());
     }
 
+    /**
+     * Stress test: log from many threads at the same time before a
+     * LogService has been injected, and verify that all messages are
+     * replayed exactly once, and in order for each thread
+     */
+    @Test
+    void testConcurrentLoggingBeforeLogServiceInjection() throws Exception {
+        var adapter = new LogServiceAdapter();
+        var numberOfThreads = 8;
+        var messagesPerThread = 500;
+        var executor = Executors.newFixedThreadPool(numberOfThreads);
+        try {
+            var startSignal = new CountDownLatch(1);
+            var producers = new ArrayList<Future<Void>>();
+            for (var thread = 0; thread < numberOfThreads; ++thread) {
+                var threadNumber = thread;
+                Callable<Void> producer = () -> {
+                    startSignal.await();
+                    for (var i = 0; i < messagesPerThread; ++i) {
+                        adapter.log(LogService.LOG_INFO, threadNumber + ":" + i);
+                    }
+                    return null;
+                };
+                producers.add(executor.submit(producer));
+            }
+            startSignal.countDown();
+            for (var producer : producers) {
+                producer.get();
+            }
+        } finally {
+            executor.shutdown();
+        }
+
+        var logservice = new MockLogService();
+        adapter.setLogService(logservice);
+
+        // Verify that nothing was lost and nothing was duplicated
+        var logmessages = logservice.getLogmessages();
+        assertEquals(numberOfThreads * messagesPerThread, logmessages.size());
+        assertEquals(logmessages.size(), new HashSet<>(logmessages).size());
+
+        // Verify that the messages of each thread were replayed in the order they were logged
+        var lastMessageNumbers = new int[numberOfThreads];
+        Arrays.fill(lastMessageNumbers, -1);
+        for (var logmessage : logmessages) {
+            var threadAndMessageNumber = logmessage.substring("[INFO] ".length()).split(":");
+            var threadNumber = Integer.parseInt(threadAndMessageNumber[0]);
+            var messageNumber = Integer.parseInt(threadAndMessageNumber[1]);
+            assertEquals(lastMessageNumbers[threadNumber] + 1, messageNumber);
+            lastMessageNumbers[threadNumber] = messageNumber;
+        }
+
+        // Verify that nothing is replayed a second time
+        var newLogservice = new MockLogService();
+        adapter.setLogService(newLogservice);
+        assertEquals(0, newLogservice.getLogmessages().size());
+    }
+
+    @Test
+    void testDropOldestWhenBufferIsFull() {
+        var adapter = new LogServiceAdapter()
+            .setBufferCapacity(2)
+            .setOverflowPolicy(OverflowPolicy.DROP_OLDEST);
+
+        adapter.log(LogService.LOG_INFO, "Message 1");
+        adapter.log(LogService.LOG_INFO, "Message 2");
+        adapter.log(LogService.LOG_ERROR, "Message 3");
+        adapter.log(LogService.LOG_DEBUG, "Message 4");
+
+        var logservice = new MockLogService();
+        adapter.setLogService(logservice);
+
+        assertThat(logservice.getLogmessages()).containsExactly(
+            "[ERROR] Message 3",
+            "[DEBUG] Message 4",
+            "[WARNING] Dropped 2 log messages saved before a LogService was available (error: 0, warning: 0, info: 2, debug: 0)");
+    }
+
+    @Test
+    void testChangeBufferSettingsWhileSavingLogMessages() throws Exception {
+        var adapter = new LogServiceAdapter();
+        var producers = 4;
+        var messagesPerProducer = 5000;
+        var executor = Executors.newFixedThreadPool(producers);
+        try {
+            var start = new CountDownLatch(1);
+            var futures = new ArrayList<Future<?>>();
+            for (var producer = 0; producer < producers; ++producer) {
+                var name = "Producer " + producer;
+                futures.add(executor.submit(() -> {
+                    start.await();
+                    for (var i = 0; i < messagesPerProducer; ++i) {
+                        adapter.log(LogService.LOG_INFO, name + " message " + i);
+                    }
+
+                    return null;
+                }));
+            }
+
+            start.countDown();
+            for (var i = 0; i < 50; ++i) {
+                adapter.setBufferCapacity(LogServiceAdapter.DEFAULT_BUFFER_CAPACITY + i);
+                adapter.setOverflowPolicy(i % 2 == 0 ? OverflowPolicy.DROP_NEWEST : OverflowPolicy.DROP_OLDEST);
+            }
+
+            for (var future : futures) {
+                future.get(10, TimeUnit.SECONDS);
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+
+        var logservice = new MockLogService();
+        adapter.setLogService(logservice);
+        assertEquals(producers * messagesPerProducer, logservice.getLogmessages().size());
+        assertThat(logservice.getLogmessages()).contains("[INFO] Producer 0 message " + (messagesPerProducer - 1));
+    }
+
+    @Test
+    void testDropNewestWhenBufferIsFull() {
+        var adapter = new LogServiceAdapter()
+            .setBufferCapacity(2)
+            .setOverflowPolicy(OverflowPolicy.DROP_NEWEST);
+
+        adapter.log(LogService.LOG_INFO, "Message 1");
+        adapter.log(LogService.LOG_INFO, "Message 2");
+        adapter.log(LogService.LOG_ERROR, "Message 3");
+        adapter.log(LogService.LOG_DEBUG, "Message 4");
+
+        var logservice = new MockLogService();
+        adapter.setLogService(logservice);
+
+        assertThat(logservice.getLogmessages()).containsExactly(
+            "[INFO] Message 1",
+            "[INFO] Message 2",
+            "[WARNING] Dropped 2 log messages saved before a LogService was available (error: 1, warning: 0, info: 0, debug: 1)");
+    }
+
+    @Test
+    void testKeepWarningsAndErrorsWhenBufferIsFull() {
+        var adapter = new LogServiceAdapter()
+            .setBufferCapacity(2)
+            .setOverflowPolicy(OverflowPolicy.KEEP_WARNINGS_AND_ERRORS);
+
+        adapter.log(LogService.LOG_INFO, "Message 1");
+        adapter.log(LogService.LOG_INFO, "Message 2");
+        adapter.log(LogService.LOG_DEBUG, "Message 3");
+        adapter.log(LogService.LOG_ERROR, "Message 4", new IllegalStateException());
+        adapter.log(LogService.LOG_WARNING, "Message 5");
+        adapter.log(LogService.LOG_INFO, "Message 6");
+
+        var logservice = new MockLogService();
+        adapter.setLogService(logservice);
+
+        assertThat(logservice.getLogmessages()).containsExactly(
+            "[ERROR] Message 4 java.lang.IllegalStateException",
+            "[WARNING] Message 5",
+            "[WARNING] Dropped 4 log messages saved before a LogService was available (error: 0, warning: 0, info: 3, debug: 1)");
+
+        // Verify that the dropped message counts were cleared by the summary
+        var newLogservice = new MockLogService();
+        adapter.setLogService(newLogservice);
+        assertEquals(0, newLogservice.getLogmessages().size());
+
+        // Verify that a new error takes the place of an info message saved after an older error
+        adapter.setLogService(null);
+        adapter.log(LogService.LOG_ERROR, "error A");
+        adapter.log(LogService.LOG_INFO, "info B");
+        adapter.log(LogService.LOG_ERROR, "error C");
+        var thirdLogservice = new MockLogService();
+        adapter.setLogService(thirdLogservice);
+        assertThat(thirdLogservice.getLogmessages()).containsExactly(
+            "[ERROR] error A",
+            "[ERROR] error C",
+            "[WARNING] Dropped 1 log messages saved before a LogService was available (error: 0, warning: 0, info: 1, debug: 0)");
+    }
+
+    @Test
+    void testKeepWarningsAndErrorsKeepsOrderAcrossChunks() {
+        var adapter = new LogServiceAdapter()
+            .setBufferCapacity(1500) // Spans two chunks
+            .setOverflowPolicy(OverflowPolicy.KEEP_WARNINGS_AND_ERRORS);
+
+        for (var i = 0; i < 1500; ++i) {
+            adapter.log(i == 1200 ? LogService.LOG_INFO : LogService.LOG_ERROR, "Message " + i);
+        }
+
+        adapter.log(LogService.LOG_ERROR, "Message 1500"); // Takes the place of the info message
+        adapter.log(LogService.LOG_ERROR, "Message 1501"); // Takes the place of the oldest error
+
+        var logservice = new MockLogService();
+        adapter.setLogService(logservice);
+
+        var expected = new ArrayList<String>();
+        for (var i = 1; i < 1502; ++i) {
+            if (i != 1200) {
+                expected.add("[ERROR] Message " + i);
+            }
+        }
+
+        expected.add("[WARNING] Dropped 2 log messages saved before a LogService was available (error: 1, warning: 0, info: 1, debug: 0)");
+        assertEquals(expected, logservice.getLogmessages());
+    }
+
+    @Test
+    void testBlockUntilTimeoutWhenBufferIsFull() {
+        var blockTimeout = Duration.ofMillis(20);
+        var adapter = new LogServiceAdapter()
+            .setBufferCapacity(1)
+            .setOverflowPolicy(OverflowPolicy.BLOCK)
+            .setBlockTimeout(blockTimeout);
+
+        adapter.log(LogService.LOG_INFO, "Message 1");
+        var startTime = System.nanoTime();
+        adapter.log(LogService.LOG_WARNING, "Message 2");
+        var blockedTime = Duration.ofNanos(System.nanoTime() - startTime);
+
+        // Verify that the second log call waited for room before dropping the message
+        assertThat(blockedTime).isGreaterThanOrEqualTo(blockTimeout);
+
+        var logservice = new MockLogService();
+        adapter.setLogService(logservice);
+
+        assertThat(logservice.getLogmessages()).containsExactly(
+            "[INFO] Message 1",
+            "[WARNING] Dropped 1 log messages saved before a LogService was available (error: 0, warning: 1, info: 0, debug: 0)");
+    }
+
+    @Test
+    void testChangeBufferCapacityKeepsSavedMessages() {
+        var adapter = new LogServiceAdapter();
+        adapter.log(LogService.LOG_INFO, "Message 1");
+        adapter.log(LogService.LOG_INFO, "Message 2");
+
+        adapter.setBufferCapacity(10);
+
+        var logservice = new MockLogService();
+        adapter.setLogService(logservice);
+        assertThat(logservice.getLogmessages()).containsExactly("[INFO] Message 1", "[INFO] Message 2");
+    }
+
+    @Test
+    void testIllegalBufferCapacity() {
+        var adapter = new LogServiceAdapter();
+        var e = assertThrows(IllegalArgumentException.class, () -> adapter.setBufferCapacity(0));
+        assertThat(e.getMessage()).startsWith("Capacity of saved log message buffer must be at least 1");
+    }
+
+    @Test
+    void testWrapAroundBufferSpanningSeveralChunks() {
+        var adapter = new LogServiceAdapter().setBufferCapacity(2500);
+        for (var i = 0; i < 3000; ++i) {
+            adapter.log(LogService.LOG_INFO, "Message " + i);
+        }
+
+        var logservice = new MockLogService();
+        adapter.setLogService(logservice);
+        var logmessages = logservice.getLogmessages();
+        assertEquals(2501, logmessages.size());
+        assertEquals("[INFO] Message 500", logmessages.get(0));
+        assertEquals("[INFO] Message 2999", logmessages.get(2499));
+
+        // Buffer memory is released after the replay, and is allocated again when needed
+        adapter.setLogService(null);
+        adapter.log(LogService.LOG_INFO, "Message 3000");
+        adapter.setLogService(logservice);
+        assertEquals("[INFO] Message 3000", logservice.getLogmessages().get(2501));
+    }
+
+    @Test
+    void testSpillToJournalWhenBufferIsFull() throws Exception {
+        var journalDirectory = Files.createTempDirectory("journal");
+        var adapter = new LogServiceAdapter()
+            .setBufferCapacity(2)
+            .setOverflowPolicy(OverflowPolicy.SPILL_TO_JOURNAL)
+            .setJournalDirectory(journalDirectory);
+        var service = mock(ServiceReference.class);
+        when(service.toString()).thenReturn("<service>");
+        var padding = "x".repeat(5000);
+        adapter.log(LogService.LOG_INFO, "Message 0");
+        adapter.log(LogService.LOG_INFO, "Message 1");
+        adapter.log(LogService.LOG_ERROR, "Message 2", new IllegalStateException("2"));
+        adapter.log(service, LogService.LOG_WARNING, "Message 3");
+        adapter.log(service, LogService.LOG_ERROR, "Message 4", new IllegalArgumentException("4"));
+        for (var i = 5; i < 300; ++i) {
+            adapter.log(LogService.LOG_DEBUG, "Message " + i + " " + padding);
+        }
+
+        try (var journalFiles = Files.list(journalDirectory)) {
+            assertEquals(1, journalFiles.count());
+        }
+
+        var logservice = new MockLogService();
+        adapter.setLogService(logservice);
+
+        var logmessages = logservice.getLogmessages();
+        assertEquals(300, logmessages.size());
+        assertEquals("[INFO] Message 0", logmessages.get(0));
+        assertEquals("[INFO] Message 1", logmessages.get(1));
+        assertEquals("[ERROR] Message 2 java.lang.IllegalStateException: 2", logmessages.get(2));
+        assertEquals("[WARNING] <service> Message 3", logmessages.get(3));
+        assertEquals("[ERROR] <service> Message 4 java.lang.IllegalArgumentException: 4", logmessages.get(4));
+        assertEquals("[DEBUG] Message 299 " + padding, logmessages.get(299));
+        try (var journalFiles = Files.list(journalDirectory)) {
+            assertEquals(0, journalFiles.count());
+        }
+
+        Files.delete(journalDirectory);
+    }
+
+    @Test
+    void testSpillToJournalWritesExceptionsAsTextWhenTooManyAreKept() throws Exception {
+        var journalDirectory = Files.createTempDirectory("journal");
+        var adapter = new LogServiceAdapter()
+            .setBufferCapacity(2)
+            .setOverflowPolicy(OverflowPolicy.SPILL_TO_JOURNAL)
+            .setJournalDirectory(journalDirectory);
+        adapter.log(LogService.LOG_INFO, "Message 0");
+        adapter.log(LogService.LOG_INFO, "Message 1");
+        for (var i = 0; i < 1100; ++i) {
+            adapter.log(LogService.LOG_ERROR, "Error " + i, new IllegalStateException(Integer.toString(i)));
+        }
+
+        var logservice = new MockLogService();
+        adapter.setLogService(logservice);
+
+        // Verify that the exceptions kept in memory are logged as exceptions, and the rest as text
+        var logmessages = logservice.getLogmessages();
+        assertEquals(1102, logmessages.size());
+        assertEquals("[ERROR] Error 1023 java.lang.IllegalStateException: 1023", logmessages.get(1025));
+        assertThat(logmessages.get(1026)).startsWith("[ERROR] Error 1024" + System.lineSeparator() + "java.lang.IllegalStateException: 1024");
+        assertThat(logmessages.get(1101)).startsWith("[ERROR] Error 1099" + System.lineSeparator() + "java.lang.IllegalStateException: 1099");
+        try (var journalFiles = Files.list(journalDirectory)) {
+            assertEquals(0, journalFiles.count());
+        }
+
+        Files.delete(journalDirectory);
+    }
+
+    @Test
+    void testReplaySavedMessagesWithOriginalTimeAndThreadToLogListener() throws Exception {
+        var adapter = new LogServiceAdapter();
+        var timeBeforeLogging = System.currentTimeMillis();
+        var service = mock(ServiceReference.class);
+        var exception = new IllegalStateException();
+        var loggingThread = new Thread(() -> {
+            adapter.log(LogService.LOG_DEBUG, "This is a debug message");
+            adapter.log(LogService.LOG_INFO, "This is an info message", exception);
+            adapter.log(service, LogService.LOG_WARNING, "This is a warning message");
+            adapter.log(service, LogService.LOG_ERROR, "This is an error message", exception);
+        }, "early-logging-thread");
+        loggingThread.start();
+        loggingThread.join();
+        var timeAfterLogging = System.currentTimeMillis();
+        Thread.sleep(10);
+
+        var logservice = new MockLogServiceWithLogListener();
+        adapter.setLogService(logservice);
+
+        // Verify that the saved messages were given to the listener rather than logged
+        assertEquals(0, logservice.getLogmessages().size());
+        var entries = logservice.entries;
+        assertEquals(4, entries.size());
+        for (var entry : entries) {
+            assertThat(entry.getTime()).isBetween(timeBeforeLogging, timeAfterLogging);
+            assertEquals("early-logging-thread", entry.getThreadInfo());
+            assertEquals("LogService", entry.getLoggerName());
+        }
+
+        assertEquals(LogLevel.DEBUG, entries.get(0).getLogLevel());
+        assertEquals("This is a debug message", entries.get(0).getMessage());
+        assertNull(entries.get(0).getException());
+        assertNull(entries.get(0).getServiceReference());
+        assertEquals(LogLevel.INFO, entries.get(1).getLogLevel());
+        assertEquals(exception, entries.get(1).getException());
+        assertEquals(LogLevel.WARN, entries.get(2).getLogLevel());
+        assertEquals(service, entries.get(2).getServiceReference());
+        assertNull(entries.get(2).getException());
+        assertEquals(LogService.LOG_ERROR, entries.get(3).getLevel());
+        assertEquals(service, entries.get(3).getServiceReference());
+        assertEquals(exception, entries.get(3).getException());
+
+        // Verify that new messages are logged through the LogService
+        adapter.log(LogService.LOG_INFO, "This is a live message");
+        assertEquals(4, entries.size());
+        assertThat(logservice.getLogmessages()).containsExactly("[INFO] This is a live message");
+    }
+
+    @Test
+    void testAsynchronousReplay() {
+        var pendingReplays = new ArrayList<Runnable>();
+        var adapter = new LogServiceAdapter().setReplayExecutor(pendingReplays::add);
+        adapter.log(LogService.LOG_INFO, "Message 1");
+        adapter.log(LogService.LOG_INFO, "Message 2");
+
+        var logservice = new MockLogService();
+        adapter.setLogService(logservice);
+
+        // Verify that the replay was handed to the executor
+        assertEquals(1, pendingReplays.size());
+        assertEquals(0, logservice.getLogmessages().size());
+
+        // Log a message while the replay is pending
+        adapter.log(LogService.LOG_INFO, "Message 3");
+        assertEquals(0, logservice.getLogmessages().size());
+
+        // Run the replay and verify that the message logged during the replay comes last
+        pendingReplays.get(0).run();
+        assertThat(logservice.getLogmessages()).containsExactly("[INFO] Message 1", "[INFO] Message 2", "[INFO] Message 3");
+
+        // Verify that new messages go directly to the LogService
+        adapter.log(LogService.LOG_INFO, "Message 4");
+        assertEquals(4, logservice.getLogmessages().size());
+    }
+
+    @Test
+    void testAsynchronousReplayReplacedBeforeReplayStarted() {
+        var pendingReplays = new ArrayList<Runnable>();
+        var adapter = new LogServiceAdapter().setReplayExecutor(pendingReplays::add);
+        adapter.log(LogService.LOG_INFO, "Message 1");
+
+        var firstLogservice = new MockLogService();
+        adapter.setLogService(firstLogservice);
+        var secondLogservice = new MockLogService();
+        adapter.setLogService(secondLogservice);
+        assertEquals(2, pendingReplays.size());
+
+        // Verify that the first replay does nothing, because the LogService was replaced
+        pendingReplays.get(0).run();
+        assertEquals(0, firstLogservice.getLogmessages().size());
+        pendingReplays.get(1).run();
+        assertThat(secondLogservice.getLogmessages()).containsExactly("[INFO] Message 1");
+    }
+
+    @Test
+    void testAsynchronousReplaySameLogServiceSetTwice() {
+        var pendingReplays = new ArrayList<Runnable>();
+        var adapter = new LogServiceAdapter().setReplayExecutor(pendingReplays::add);
+        adapter.log(LogService.LOG_INFO, "Message 1");
+
+        var logservice = new MockLogService();
+        adapter.setLogService(logservice);
+        adapter.setLogService(logservice);
+        assertEquals(1, pendingReplays.size());
+
+        pendingReplays.get(0).run();
+        assertThat(logservice.getLogmessages()).containsExactly("[INFO] Message 1");
+
+        // Verify that buffer settings can still be changed, i.e. that no replay holds the replay lock
+        adapter.setBufferCapacity(10);
+        adapter.log(LogService.LOG_INFO, "Message 2");
+        assertThat(logservice.getLogmessages()).containsExactly("[INFO] Message 1", "[INFO] Message 2");
+    }
+
+    @Test
+    void testAsynchronousReplaysOfSameLogServiceDontSpin() {
+        var pendingReplays = new ArrayList<Runnable>();
+        var adapter = new LogServiceAdapter().setReplayExecutor(pendingReplays::add);
+        adapter.log(LogService.LOG_INFO, "Message 1");
+
+        var logservice = new MockLogService();
+        adapter.setLogService(logservice);
+        adapter.setLogService(new MockLogService());
+        adapter.setLogService(logservice);
+        assertEquals(3, pendingReplays.size());
+
+        // Verify that the replay running after the first replay went live doesn't wait forever to go live
+        assertTimeoutPreemptively(Duration.ofSeconds(10), () -> pendingReplays.forEach(Runnable::run));
+        assertThat(logservice.getLogmessages()).containsExactly("[INFO] Message 1");
+        adapter.log(LogService.LOG_INFO, "Message 2");
+        assertThat(logservice.getLogmessages()).containsExactly("[INFO] Message 1", "[INFO] Message 2");
+    }
+
+    @Test
+    void testAsynchronousReplayInBackgroundThread() throws Exception {
+        var adapter = new LogServiceAdapter().setAsynchronousReplay(true);
+        var numberOfMessages = 1000;
+        for (var i = 0; i < numberOfMessages; ++i) {
+            adapter.log(LogService.LOG_DEBUG, "Message " + i);
+        }
+
+        var allMessagesReplayed = new CountDownLatch(numberOfMessages);
+        var replayThreadName = new String[1];
+        var logservice = new MockLogService() {
+            @Override
+            public void log(int level, String message) {
+                super.log(level, message);
+                replayThreadName[0] = Thread.currentThread().getName();
+                allMessagesReplayed.countDown();
+            }
+        };
+        adapter.setLogService(logservice);
+
+        assertTrue(allMessagesReplayed.await(10, TimeUnit.SECONDS));
+        assertNotEquals(Thread.currentThread().getName(), replayThreadName[0]);
+        assertEquals("Message 0", logservice.getLogmessages().get(0).substring("[DEBUG] ".length()));
+    }
+
     @Test
     void testGetLoggerWithName() {
         var logservice = new MockLogService();
@@ -154,4 +673,818 @@ class LogServiceAdapterTest {
         assertEquals("[INFO] Message 123", logservice.getLogmessages().get(0));
     }
 
+    @Test
+    void testUnbindLogServiceResumesSaving() {
+        var adapter = new LogServiceAdapter();
+        var logservice = new MockLogService();
+        adapter.setLogService(logservice);
+        adapter.log(LogService.LOG_INFO, "Message 1");
+
+        adapter.setLogService(null);
+        adapter.log(LogService.LOG_INFO, "Message 2");
+        adapter.log(LogService.LOG_WARNING, "Message 3");
+        assertThat(logservice.getLogmessages()).containsExactly("[INFO] Message 1");
+
+        var newLogservice = new MockLogService();
+        adapter.setLogService(newLogservice);
+        adapter.log(LogService.LOG_INFO, "Message 4");
+        assertThat(newLogservice.getLogmessages()).containsExactly("[INFO] Message 2", "[WARNING] Message 3", "[INFO] Message 4");
+    }
+
+    @Test
+    void testUnsetLogServiceAfterBindingReplacement() {
+        var adapter = new LogServiceAdapter();
+        var logservice = new MockLogService();
+        var newLogservice = new MockLogService();
+        adapter.setLogService(logservice);
+
+        // Greedy dynamic reference: the new service is bound before the old is unbound
+        adapter.setLogService(newLogservice);
+        adapter.unsetLogService(logservice);
+        adapter.log(LogService.LOG_INFO, "Message 1");
+        assertThat(newLogservice.getLogmessages()).containsExactly("[INFO] Message 1");
+
+        adapter.unsetLogService(newLogservice);
+        adapter.log(LogService.LOG_INFO, "Message 2");
+        assertThat(newLogservice.getLogmessages()).containsExactly("[INFO] Message 1");
+        adapter.setLogService(logservice);
+        assertThat(logservice.getLogmessages()).containsExactly("[INFO] Message 2");
+    }
+
+    @Test
+    void testGetLoggerBeforeLogServiceInjection() {
+        var adapter = new LogServiceAdapter();
+        var logger = adapter.getLogger(LogServiceAdapterTest.class);
+        var formatterLogger = adapter.getLogger("TestLogger", FormatterLogger.class);
+        assertEquals(LogServiceAdapterTest.class.getName(), logger.getName());
+        assertTrue(logger.isDebugEnabled());
+        adapter.log(LogService.LOG_INFO, "Message 1");
+        logger.info("Message {}", Integer.valueOf(2));
+        logger.error("Message {}", "3", new IllegalStateException("3"));
+        logger.warn("Message \\{} {}", 4);
+        formatterLogger.info("Message %d", 5);
+
+        var logservice = new MockLogService();
+        adapter.setLogService(logservice);
+        logger.info("Message {}", Integer.valueOf(6));
+        assertThat(logservice.getLogmessages()).containsExactly(
+            "[INFO] Message 1",
+            "[INFO] Message 2",
+            "[ERROR] Message 3 java.lang.IllegalStateException: 3",
+            "[WARNING] Message {} 4",
+            "[INFO] Message 5",
+            "[INFO] Message 6");
+
+        // The logger keeps working after the LogService has been unbound
+        adapter.setLogService(null);
+        logger.info("Message {}", Integer.valueOf(7));
+        var newLogservice = new MockLogService();
+        adapter.setLogService(newLogservice);
+        assertThat(newLogservice.getLogmessages()).containsExactly("[INFO] Message 7");
+    }
+
+    @Test
+    void testLoggerCallsBeforeLogServiceInjectionAreReplayedOnLoggerOfLogService() {
+        var adapter = new LogServiceAdapter();
+        var logger = adapter.getLogger("TestLogger");
+        var formatCalls = new AtomicInteger();
+        var argument = new Object() {
+                @Override
+                public String toString() {
+                    return "argument " + formatCalls.incrementAndGet();
+                }
+            };
+        logger.trace("Trace message with {}", argument);
+        logger.debug("Debug message with {}", argument);
+        adapter.log(LogService.LOG_INFO, "Info message");
+        logger.warn("Warning message");
+        assertEquals(0, formatCalls.get(), "Arguments should not be formatted before replay");
+
+        var logservice = new MockLogService();
+        logservice.setTraceEnabled(false);
+        adapter.setLogService(logservice);
+        assertEquals(1, formatCalls.get(), "Only the enabled log call should be formatted");
+        assertThat(logservice.getLogmessages()).containsExactly(
+            "[DEBUG] Debug message with argument 1",
+            "[INFO] Info message",
+            "[WARNING] Warning message");
+    }
+
+    @Test
+    void testLoggerCallsBeforeLogServiceInjectionReplayedToLogListener() {
+        var adapter = new LogServiceAdapter();
+        var logger = adapter.getLogger("TestLogger");
+        var exception = new IllegalStateException("failed");
+        logger.trace("Trace message {}", 1);
+        logger.error("Error message {}", 2, exception);
+
+        var logservice = new MockLogServiceWithLogListener();
+        adapter.setLogService(logservice);
+        var entries = logservice.entries;
+        assertEquals(2, entries.size());
+        assertEquals("TestLogger", entries.get(0).getLoggerName());
+        assertEquals(LogLevel.TRACE, entries.get(0).getLogLevel());
+        assertEquals(LogService.LOG_DEBUG, entries.get(0).getLevel());
+        assertEquals("Trace message 1", entries.get(0).getMessage());
+        assertEquals(LogLevel.ERROR, entries.get(1).getLogLevel());
+        assertEquals("Error message 2", entries.get(1).getMessage());
+        assertEquals(exception, entries.get(1).getException());
+    }
+
+    @Test
+    void testFormatSameTemplateWithDifferentArguments() {
+        var adapter = new LogServiceAdapter();
+        var logger = adapter.getLogger("TestLogger");
+        var format = "Value {} of {} \\{} done";
+        var argumentFormattingLogs = new Object() {
+                @Override
+                public String toString() {
+                    logger.info("Nested {} {}", "a", "b");
+                    return "nested";
+                }
+            };
+        logger.info(format, 1, 2);
+        logger.info(format, "x");
+        logger.info(format, argumentFormattingLogs, 3);
+        logger.info(format, 4, 5);
+
+        var logservice = new MockLogServiceWithLogListener();
+        adapter.setLogService(logservice);
+        var messages = logservice.entries.stream().map(LogEntry::getMessage).toList();
+        assertThat(messages).contains(
+            "Value 1 of 2 {} done",
+            "Value x of {} {} done",
+            "Value nested of 3 {} done",
+            "Value 4 of 5 {} done");
+    }
+
+    @Test
+    void testFormatterLoggerCallsReplayedToLogListener() {
+        var adapter = new LogServiceAdapter();
+        var logger = adapter.getLogger("TestLogger", FormatterLogger.class);
+        logger.info("Plain %s, %d and %x, 100%%", "text", 42, 255);
+        logger.info("Plain %s, %d and %x, 100%%", null, -7L, -1);
+        logger.info("Byte %d and %x", (byte) 5, (byte) -1);
+        logger.info("Precision %.2f", 3.14159);
+        logger.info("Missing argument %s %s", "one");
+        logger.info("Wrong argument %d", "text");
+
+        var logservice = new MockLogServiceWithLogListener();
+        adapter.setLogService(logservice);
+        var messages = logservice.entries.stream().map(LogEntry::getMessage).toList();
+        assertThat(messages).containsExactly(
+            "Plain text, 42 and ff, 100%",
+            "Plain null, -7 and ffffffff, 100%",
+            "Byte 5 and ff",
+            String.format("Precision %.2f", 3.14159),
+            "Missing argument %s %s",
+            "Wrong argument %d");
+    }
+
+    @Test
+    void testLoggerConsumerBeforeLogServiceInjectionIsCalledAtReplay() throws Exception {
+        var adapter = new LogServiceAdapter();
+        var logger = adapter.getLogger("TestLogger");
+        var calls = new AtomicInteger();
+        logger.debug(l -> l.debug("Debug message {}", calls.incrementAndGet()));
+        logger.info(l -> l.info("Info message {}", calls.incrementAndGet()));
+        logger.warn(l -> {
+                calls.incrementAndGet();
+                throw new IllegalStateException("failed");
+            });
+        assertEquals(0, calls.get(), "Consumers should not be called before replay");
+
+        var logservice = new MockLogService();
+        logservice.setDebugEnabled(false);
+        adapter.setLogService(logservice);
+        assertEquals(2, calls.get(), "Only the consumers of enabled levels should be called");
+        assertThat(logservice.getLogmessages()).containsExactly(
+            "[INFO] Info message 1",
+            "[WARNING] Failed to build log message: java.lang.IllegalStateException: failed");
+    }
+
+    @Test
+    void testLoggerConsumerBeforeLogServiceInjectionReplayedToLogListener() throws Exception {
+        var adapter = new LogServiceAdapter();
+        var logger = adapter.getLogger("TestLogger");
+        logger.info(l -> {
+                l.info("Message {}", 1);
+                l.info("Message {}", 2);
+            });
+
+        var logservice = new MockLogServiceWithLogListener();
+        adapter.setLogService(logservice);
+        assertEquals(1, logservice.entries.size());
+        assertEquals(LogLevel.INFO, logservice.entries.get(0).getLogLevel());
+        assertEquals("TestLogger", logservice.entries.get(0).getLoggerName());
+        assertEquals("Message 1\nMessage 2", logservice.entries.get(0).getMessage());
+    }
+
+    @Test
+    void testDisabledLevelsNotBuiltWhenReplayedToLogListener() {
+        var adapter = new LogServiceAdapter();
+        var logger = adapter.getLogger("TestLogger");
+        var calls = new AtomicInteger();
+        adapter.log(LogService.LOG_DEBUG, () -> "Debug supplier " + calls.incrementAndGet());
+        logger.debug(l -> l.debug("Debug consumer {}", calls.incrementAndGet()));
+        logger.debug("Debug message {}", 1);
+        adapter.log(LogService.LOG_INFO, () -> "Info supplier " + calls.incrementAndGet());
+
+        var logservice = new MockLogServiceWithLogListener();
+        logservice.setDebugEnabled(false);
+        adapter.setLogService(logservice);
+        assertEquals(1, calls.get(), "Only the supplier of the enabled level should be called");
+        var messages = logservice.entries.stream().map(LogEntry::getMessage).toList();
+        assertThat(messages).containsExactly("Info supplier 1");
+    }
+
+    @Test
+    void testGetLoggerIsCached() {
+        var adapter = new LogServiceAdapter();
+        var bundle = mock(Bundle.class);
+        var logger = adapter.getLogger("TestLogger");
+        assertSame(logger, adapter.getLogger("TestLogger"));
+        assertSame(logger, adapter.getLogger("TestLogger", Logger.class));
+        assertSame(adapter.getLogger(LogServiceAdapterTest.class), adapter.getLogger(LogServiceAdapterTest.class.getName()));
+        assertNotSame(logger, adapter.getLogger("OtherLogger"));
+        assertNotSame(logger, adapter.getLogger("TestLogger", FormatterLogger.class));
+        assertNotSame(logger, adapter.getLogger(bundle, "TestLogger", Logger.class));
+        assertSame(adapter.getLogger(bundle, "TestLogger", Logger.class), adapter.getLogger(bundle, "TestLogger", Logger.class));
+    }
+
+    @Test
+    void testLoggerCacheIsReplacedWhenLogServiceChanges() {
+        var adapter = new LogServiceAdapter();
+        var customLogger = mock(CustomLogger.class);
+        var logservice = new MockLogServiceWithCustomLogger(customLogger);
+        adapter.setLogService(logservice);
+        var logger = adapter.getLogger("TestLogger");
+        assertSame(customLogger, adapter.getLogger("TestLogger", CustomLogger.class));
+        assertSame(customLogger, adapter.getLogger("TestLogger", CustomLogger.class));
+        assertEquals(1, logservice.customLoggersCreated);
+
+        // Setting the same LogService again keeps the cache
+        adapter.setLogService(logservice);
+        assertSame(logger, adapter.getLogger("TestLogger"));
+
+        var newCustomLogger = mock(CustomLogger.class);
+        var newLogservice = new MockLogServiceWithCustomLogger(newCustomLogger);
+        adapter.setLogService(newLogservice);
+        assertNotSame(logger, adapter.getLogger("TestLogger"));
+        assertSame(newCustomLogger, adapter.getLogger("TestLogger", CustomLogger.class));
+
+        // Loggers gotten before the change keep working
+        logger.info("Message {}", 1);
+        assertThat(newLogservice.getLogmessages()).containsExactly("[INFO] Message 1");
+    }
+
+    @Test
+    void testGetLoggerOfUnsupportedTypeBeforeLogServiceInjection() {
+        var adapter = new LogServiceAdapter();
+        var e = assertThrows(IllegalArgumentException.class, () -> adapter.getLogger("TestLogger", CustomLogger.class));
+        assertThat(e.getMessage()).contains("CustomLogger");
+    }
+
+    interface CustomLogger extends Logger {
+    }
+
+    @Test
+    void testAsynchronousDispatch() throws Exception {
+        for (var waitStrategy : WaitStrategy.values()) {
+            var adapter = new LogServiceAdapter()
+                .setAsynchronousDispatch(true)
+                .setDispatchQueueCapacity(4)
+                .setWaitStrategy(waitStrategy);
+            adapter.log(LogService.LOG_INFO, "Saved message");
+            var logservice = new MockLogService();
+            adapter.setLogService(logservice);
+            for (var i = 0; i < 100; ++i) {
+                adapter.log(LogService.LOG_INFO, "Message " + i);
+            }
+
+            adapter.flush();
+            var logmessages = logservice.getLogmessages();
+            assertEquals(101, logmessages.size(), "Wait strategy " + waitStrategy);
+            assertEquals("[INFO] Saved message", logmessages.get(0));
+            assertEquals("[INFO] Message 99", logmessages.get(100));
+            adapter.close();
+        }
+    }
+
+    @Test
+    void testAsynchronousDispatchFromLogServiceThread() throws Exception {
+        var adapter = new LogServiceAdapter().setAsynchronousDispatch(true);
+        var threadNames = new ArrayList<String>();
+        var logservice = new MockLogService() {
+            @Override
+            public void log(int level, String message) {
+                threadNames.add(Thread.currentThread().getName());
+                super.log(level, message);
+            }
+        };
+        adapter.setLogService(logservice);
+
+        adapter.log(LogService.LOG_INFO, "Message 1");
+        adapter.flush();
+
+        assertThat(logservice.getLogmessages()).containsExactly("[INFO] Message 1");
+        assertThat(threadNames).containsExactly("LogServiceAdapter dispatch");
+        adapter.close();
+    }
+
+    @Test
+    void testCloseAsynchronousDispatchPassesOnWaitingMessages() {
+        var adapter = new LogServiceAdapter()
+            .setAsynchronousDispatch(true)
+            .setWaitStrategy(WaitStrategy.BLOCKING);
+        var logservice = new MockLogService();
+        adapter.setLogService(logservice);
+        for (var i = 0; i < 1000; ++i) {
+            adapter.log(LogService.LOG_INFO, "Message " + i);
+        }
+
+        adapter.close();
+        assertEquals(1000, logservice.getLogmessages().size());
+
+        // After close, log messages are passed directly to the LogService
+        adapter.log(LogService.LOG_INFO, "Message 1000");
+        assertEquals("[INFO] Message 1000", logservice.getLogmessages().get(1000));
+    }
+
+    @Test
+    void testUnbindLogServiceInAsynchronousDispatchMode() {
+        var adapter = new LogServiceAdapter().setAsynchronousDispatch(true);
+        var logservice = new MockLogService();
+        adapter.setLogService(logservice);
+        adapter.log(LogService.LOG_INFO, "Message 1");
+
+        adapter.setLogService(null);
+        assertThat(logservice.getLogmessages()).containsExactly("[INFO] Message 1");
+        adapter.log(LogService.LOG_INFO, "Message 2");
+
+        var newLogservice = new MockLogService();
+        adapter.setLogService(newLogservice);
+        adapter.close();
+        assertThat(newLogservice.getLogmessages()).containsExactly("[INFO] Message 2");
+    }
+
+    @Test
+    void testUnbindLogServiceStopsDispatchThread() {
+        var adapter = new LogServiceAdapter().setAsynchronousDispatch(true);
+        var dispatchThreads = new ArrayList<Thread>();
+        var logservice = new MockLogService() {
+            @Override
+            public void log(int level, String message) {
+                dispatchThreads.add(Thread.currentThread());
+                super.log(level, message);
+            }
+        };
+        adapter.setLogService(logservice);
+        adapter.log(LogService.LOG_INFO, "Message 1");
+        adapter.flush();
+        assertThat(dispatchThreads).hasSize(1);
+        assertTrue(dispatchThreads.get(0).isAlive());
+
+        adapter.unsetLogService(logservice);
+        assertFalse(dispatchThreads.get(0).isAlive());
+
+        // The next LogService gets a new dispatch thread, that is stopped for good by close
+        adapter.setLogService(logservice);
+        adapter.log(LogService.LOG_INFO, "Message 2");
+        adapter.flush();
+        assertThat(dispatchThreads).hasSize(2);
+        assertNotSame(dispatchThreads.get(0), dispatchThreads.get(1));
+        adapter.close();
+        assertFalse(dispatchThreads.get(1).isAlive());
+
+        adapter.setLogService(null);
+        adapter.setLogService(logservice);
+        adapter.log(LogService.LOG_INFO, "Message 3");
+        assertSame(Thread.currentThread(), dispatchThreads.get(2));
+        assertThat(logservice.getLogmessages()).containsExactly("[INFO] Message 1", "[INFO] Message 2", "[INFO] Message 3");
+    }
+
+    @Test
+    void testIdleDispatchThreadParks() throws Exception {
+        var adapter = new LogServiceAdapter()
+            .setAsynchronousDispatch(true)
+            .setWaitStrategy(WaitStrategy.BUSY_SPIN);
+        var dispatchThreads = new ArrayList<Thread>();
+        var logservice = new MockLogService() {
+            @Override
+            public void log(int level, String message) {
+                dispatchThreads.add(Thread.currentThread());
+                super.log(level, message);
+            }
+        };
+        adapter.setLogService(logservice);
+        adapter.log(LogService.LOG_INFO, "Message 1");
+        adapter.flush();
+
+        var dispatchThread = dispatchThreads.get(0);
+        for (var i = 0; i < 100 && dispatchThread.getState() != Thread.State.WAITING; ++i) {
+            Thread.sleep(20);
+        }
+
+        assertEquals(Thread.State.WAITING, dispatchThread.getState());
+        adapter.log(LogService.LOG_INFO, "Message 2");
+        adapter.flush();
+        assertThat(logservice.getLogmessages()).containsExactly("[INFO] Message 1", "[INFO] Message 2");
+        adapter.close();
+    }
+
+    @Test
+    void testIllegalDispatchQueueCapacity() {
+        var adapter = new LogServiceAdapter();
+        var e = assertThrows(IllegalArgumentException.class, () -> adapter.setDispatchQueueCapacity(0));
+        assertThat(e.getMessage()).startsWith("Capacity of asynchronous dispatch queue must be at least 1");
+        var tooLarge = assertThrows(IllegalArgumentException.class, () -> adapter.setDispatchQueueCapacity((1 << 30) + 1));
+        assertThat(tooLarge.getMessage()).startsWith("Capacity of asynchronous dispatch queue must be at most 1073741824");
+        assertThrows(IllegalArgumentException.class, () -> adapter.setDispatchQueueCapacity(Integer.MAX_VALUE));
+        assertSame(adapter, adapter.setDispatchQueueCapacity(1 << 30));
+    }
+
+    @Test
+    void testDeduplicateRepeatedMessages() {
+        var adapter = new LogServiceAdapter().setDeduplicationWindow(Duration.ofHours(1));
+        var logservice = new MockLogService();
+        adapter.setLogService(logservice);
+
+        for (var i = 0; i < 1000; ++i) {
+            adapter.log(LogService.LOG_ERROR, "Database is down", new IllegalStateException("connection " + i));
+        }
+        adapter.log(LogService.LOG_ERROR, "Database is down", new IllegalArgumentException());
+        adapter.log(LogService.LOG_WARNING, "Database is down");
+        adapter.log(LogService.LOG_WARNING, "Database is down");
+        assertThat(logservice.getLogmessages()).containsExactly(
+            "[ERROR] Database is down java.lang.IllegalStateException: connection 0",
+            "[ERROR] Database is down java.lang.IllegalArgumentException",
+            "[WARNING] Database is down");
+
+        adapter.flush();
+        assertThat(logservice.getLogmessages()).contains(
+            "[ERROR] Database is down (repeated 999 times)",
+            "[WARNING] Database is down (repeated 1 times)");
+        assertEquals(5, logservice.getLogmessages().size());
+    }
+
+    @Test
+    void testDeduplicationWindowEnds() throws Exception {
+        var adapter = new LogServiceAdapter().setDeduplicationWindow(Duration.ofMillis(20));
+        var logservice = new MockLogService();
+        adapter.setLogService(logservice);
+
+        adapter.log(LogService.LOG_ERROR, "Database is down");
+        adapter.log(LogService.LOG_ERROR, "Database is down");
+        adapter.log(LogService.LOG_ERROR, "Database is down");
+        Thread.sleep(40);
+        adapter.log(LogService.LOG_ERROR, "Database is down");
+
+        assertThat(logservice.getLogmessages()).containsExactly(
+            "[ERROR] Database is down",
+            "[ERROR] Database is down (repeated 2 times)",
+            "[ERROR] Database is down");
+    }
+
+    @Test
+    void testRepeatsReportedWhenStormStops() throws Exception {
+        var adapter = new LogServiceAdapter().setDeduplicationWindow(Duration.ofMillis(20));
+        var logservice = new MockLogService();
+        adapter.setLogService(logservice);
+
+        for (var i = 0; i < 100; ++i) {
+            adapter.log(LogService.LOG_ERROR, "Database is down");
+        }
+        Thread.sleep(40);
+        adapter.log(LogService.LOG_INFO, "Database is up");
+
+        assertThat(logservice.getLogmessages()).containsExactly(
+            "[ERROR] Database is down",
+            "[ERROR] Database is down (repeated 99 times)",
+            "[INFO] Database is up");
+    }
+
+    @Test
+    void testDeduplicateRepeatedMessagesBeforeLogServiceInjection() {
+        var adapter = new LogServiceAdapter().setDeduplicationWindow(Duration.ofHours(1));
+        for (var i = 0; i < 100; ++i) {
+            adapter.log(LogService.LOG_ERROR, "Database is down");
+        }
+        adapter.flush();
+
+        var logservice = new MockLogService();
+        adapter.setLogService(logservice);
+        assertThat(logservice.getLogmessages()).containsExactly(
+            "[ERROR] Database is down",
+            "[ERROR] Database is down (repeated 99 times)");
+    }
+
+    @Test
+    void testDeduplicateRepeatedSupplierMessagesBeforeLogServiceInjection() {
+        var adapter = new LogServiceAdapter().setDeduplicationWindow(Duration.ofHours(1));
+        var exception = new IllegalStateException("down");
+        for (var i = 0; i < 100; ++i) {
+            adapter.log(LogService.LOG_ERROR, () -> "Database is down");
+            adapter.log(LogService.LOG_ERROR, () -> "Database failed", exception);
+        }
+        adapter.flush();
+
+        var logservice = new MockLogService();
+        adapter.setLogService(logservice);
+        var messages = logservice.getLogmessages();
+        assertEquals(4, messages.size());
+        assertThat(messages.subList(0, 2)).containsExactly(
+            "[ERROR] Database is down",
+            "[ERROR] Database failed java.lang.IllegalStateException: down");
+        assertThat(messages).contains( // The summaries are logged in the order of the table of the deduplicator
+            "[ERROR] Database is down (repeated 99 times)",
+            "[ERROR] Database failed (repeated 99 times)");
+    }
+
+    @Test
+    void testMinimumBufferedLevel() {
+        var adapter = new LogServiceAdapter().setMinimumBufferedLevel(LogService.LOG_INFO);
+        var logger = adapter.getLogger(LogServiceAdapterTest.class);
+        adapter.log(LogService.LOG_DEBUG, "Debug message");
+        adapter.log(LogService.LOG_INFO, "Info message");
+        adapter.log(LogService.LOG_ERROR, "Error message");
+        logger.debug("Debug message from {}", "logger");
+        logger.info("Info message from {}", "logger");
+        assertFalse(logger.isDebugEnabled());
+        assertTrue(logger.isInfoEnabled());
+
+        var logservice = new MockLogService();
+        adapter.setLogService(logservice);
+        adapter.log(LogService.LOG_DEBUG, "Debug message after injection");
+        assertThat(logservice.getLogmessages()).containsExactly(
+            "[INFO] Info message",
+            "[ERROR] Error message",
+            "[INFO] Info message from logger",
+            "[DEBUG] Debug message after injection");
+    }
+
+    @Test
+    void testMinimumBufferedLevelFromSystemProperty() {
+        System.setProperty(LogServiceAdapter.MINIMUM_BUFFERED_LEVEL_PROPERTY, "warning");
+        try {
+            var adapter = new LogServiceAdapter();
+            adapter.log(LogService.LOG_INFO, "Info message");
+            adapter.log(LogService.LOG_WARNING, "Warning message");
+
+            var logservice = new MockLogService();
+            adapter.setLogService(logservice);
+            assertThat(logservice.getLogmessages()).containsExactly("[WARNING] Warning message");
+        } finally {
+            System.clearProperty(LogServiceAdapter.MINIMUM_BUFFERED_LEVEL_PROPERTY);
+        }
+    }
+
+    @Test
+    void testParseLevel() {
+        assertEquals(LogService.LOG_ERROR, LogServiceAdapter.parseLevel("ERROR", LogService.LOG_DEBUG));
+        assertEquals(LogService.LOG_WARNING, LogServiceAdapter.parseLevel("warn", LogService.LOG_DEBUG));
+        assertEquals(LogService.LOG_INFO, LogServiceAdapter.parseLevel(" info ", LogService.LOG_DEBUG));
+        assertEquals(LogService.LOG_DEBUG, LogServiceAdapter.parseLevel("debug", LogService.LOG_ERROR));
+        assertEquals(2, LogServiceAdapter.parseLevel("2", LogService.LOG_DEBUG));
+        assertEquals(LogService.LOG_DEBUG, LogServiceAdapter.parseLevel("loud", LogService.LOG_DEBUG));
+        assertEquals(LogService.LOG_DEBUG, LogServiceAdapter.parseLevel(null, LogService.LOG_DEBUG));
+    }
+
+    @Test
+    void testLogWithSupplierSkipsDisabledLevels() {
+        var adapter = new LogServiceAdapter();
+        var logservice = new MockLogService();
+        logservice.setDebugEnabled(false);
+        adapter.setLogService(logservice);
+        var calls = new AtomicInteger();
+        var exception = new RuntimeException("this is an exception");
+        var sr = mock(ServiceReference.class);
+        adapter.log(LogService.LOG_DEBUG, () -> "Debug message " + calls.incrementAndGet());
+        adapter.log(LogService.LOG_DEBUG, () -> "Debug message " + calls.incrementAndGet(), exception);
+        adapter.log(sr, LogService.LOG_DEBUG, () -> "Debug message " + calls.incrementAndGet());
+        adapter.log(sr, LogService.LOG_DEBUG, () -> "Debug message " + calls.incrementAndGet(), exception);
+        adapter.log(LogService.LOG_INFO, () -> "Info message " + calls.incrementAndGet());
+
+        assertEquals(1, calls.get());
+        assertFalse(adapter.isLevelEnabled(LogService.LOG_DEBUG));
+        assertTrue(adapter.isLevelEnabled(LogService.LOG_INFO));
+        assertThat(logservice.getLogmessages()).containsExactly("[INFO] Info message 1");
+    }
+
+    @Test
+    void testLogWithSupplierBeforeLogServiceInjection() {
+        var adapter = new LogServiceAdapter().setMinimumBufferedLevel(LogService.LOG_INFO);
+        var calls = new AtomicInteger();
+        var exception = new RuntimeException("this is an exception");
+        adapter.log(LogService.LOG_DEBUG, () -> "Debug message " + calls.incrementAndGet());
+        adapter.log(LogService.LOG_INFO, () -> "Info message " + calls.incrementAndGet());
+        adapter.log(LogService.LOG_WARNING, () -> "Warning message " + calls.incrementAndGet(), exception);
+        adapter.log(LogService.LOG_ERROR, () -> { throw new IllegalStateException("failed"); });
+        assertFalse(adapter.isLevelEnabled(LogService.LOG_DEBUG));
+        assertTrue(adapter.isLevelEnabled(LogService.LOG_INFO));
+        assertEquals(0, calls.get(), "Saved suppliers should not be called before replay");
+
+        var logservice = new MockLogService();
+        logservice.setInfoEnabled(false);
+        adapter.setLogService(logservice);
+        assertEquals(1, calls.get(), "Only the supplier of the enabled level should be called");
+        assertThat(logservice.getLogmessages()).containsExactly(
+            "[WARNING] Warning message 1 java.lang.RuntimeException: this is an exception",
+            "[ERROR] Failed to build log message: java.lang.IllegalStateException: failed");
+    }
+
+    static class MockLogServiceWithCustomLogger extends MockLogService {
+        final CustomLogger customLogger;
+        int customLoggersCreated;
+
+        MockLogServiceWithCustomLogger(CustomLogger customLogger) {
+            this.customLogger = customLogger;
+        }
+
+        @Override
+        public <L extends Logger> L getLogger(String name, Class<L> loggerType) {
+            if (loggerType == CustomLogger.class) {
+                ++customLoggersCreated;
+                return loggerType.cast(customLogger);
+            }
+
+            return super.getLogger(name, loggerType);
+        }
+    }
+
+    @Test
+    void testMetrics() throws Exception {
+        var adapter = new LogServiceAdapter();
+        assertNull(adapter.getMetrics());
+        adapter.setMetricsEnabled(true);
+        var metrics = adapter.getMetrics();
+        assertSame(metrics, adapter.setMetricsEnabled(true).getMetrics());
+        var logger = adapter.getLogger("TestLogger");
+        adapter.log(LogService.LOG_INFO, "Info message 1");
+        adapter.log(LogService.LOG_INFO, "Info message 2");
+        adapter.log(LogService.LOG_ERROR, "Error message", new IllegalStateException());
+        logger.debug("Debug message {}", 1);
+        logger.warn("Warning message");
+        assertEquals(5, metrics.getBufferSize());
+        assertEquals(5, metrics.getPeakBufferSize());
+        assertEquals(0, metrics.getReplayCount());
+
+        var logservice = new MockLogService();
+        adapter.setLogService(logservice);
+        assertEquals(0, metrics.getBufferSize());
+        assertEquals(5, metrics.getPeakBufferSize());
+        assertEquals(1, metrics.getReplayCount());
+        assertEquals(5, metrics.getReplayedMessageCount());
+        assertThat(metrics.getReplayTimeMillis()).isGreaterThanOrEqualTo(metrics.getLastReplayTimeMillis());
+
+        adapter.log(LogService.LOG_WARNING, "Warning message 2");
+        logger.warn("Warning message 3");
+        assertEquals(1, metrics.getErrorCount());
+        assertEquals(3, metrics.getWarningCount());
+        assertEquals(2, metrics.getInfoCount());
+        assertEquals(1, metrics.getDebugCount());
+        assertEquals(0, metrics.getDroppedCount());
+
+        adapter.setMetricsEnabled(false);
+        assertNull(adapter.getMetrics());
+    }
+
+    @Test
+    void testMetricsCountDroppedMessages() {
+        var adapter = new LogServiceAdapter()
+            .setBufferCapacity(2)
+            .setOverflowPolicy(OverflowPolicy.DROP_NEWEST)
+            .setMetricsEnabled(true);
+        adapter.log(LogService.LOG_INFO, "Info message 1");
+        adapter.log(LogService.LOG_INFO, "Info message 2");
+        adapter.log(LogService.LOG_INFO, "Info message 3");
+
+        var metrics = adapter.getMetrics();
+        assertEquals(2, metrics.getBufferSize());
+        assertEquals(1, metrics.getDroppedCount());
+        adapter.setBufferCapacity(10);
+        assertEquals(1, metrics.getDroppedCount());
+    }
+
+    @Test
+    void testRegisterMetricsMBean() throws Exception {
+        var adapter = new LogServiceAdapter().setMetricsEnabled(true);
+        adapter.log(LogService.LOG_INFO, "Info message");
+        var metrics = adapter.getMetrics();
+        var objectName = metrics.registerMBean("LogServiceAdapterTest");
+        try {
+            var mbeanServer = ManagementFactory.getPlatformMBeanServer();
+            assertTrue(mbeanServer.isRegistered(objectName));
+            assertEquals(1L, mbeanServer.getAttribute(objectName, "InfoCount"));
+            assertEquals(1, mbeanServer.getAttribute(objectName, "BufferSize"));
+            assertEquals(0L, mbeanServer.getAttribute(objectName, "DelegateCallCount"));
+            assertEquals(0L, mbeanServer.getAttribute(objectName, "DelegateLatencyP999Nanos"));
+            var otherMetrics = new LogServiceAdapter().setMetricsEnabled(true).getMetrics();
+            assertThrows(IllegalStateException.class, () -> otherMetrics.registerMBean("LogServiceAdapterTest"));
+        } finally {
+            metrics.unregisterMBean();
+        }
+
+        assertFalse(ManagementFactory.getPlatformMBeanServer().isRegistered(objectName));
+    }
+
+    @Test
+    void testDelegateLatencyRecorded() throws Exception {
+        var adapter = new LogServiceAdapter();
+        var logger = adapter.getLogger("TestLogger");
+        adapter.log(LogService.LOG_INFO, "Saved message");
+        adapter.setDelegateLatencyRecorded(true);
+        var metrics = adapter.getMetrics();
+        assertNotNull(metrics);
+
+        var logservice = new MockLogService();
+        adapter.setLogService(logservice);
+        adapter.log(LogService.LOG_INFO, "Info message");
+        adapter.log(LogService.LOG_WARNING, "Warning message", new IllegalStateException());
+        logger.info("Logger message {}", 1);
+        var otherThread = new Thread(() -> logger.error("Logger message from other thread"));
+        otherThread.start();
+        otherThread.join();
+        assertEquals(5, logservice.getLogmessages().size());
+
+        var latency = metrics.getDelegateLatency();
+        assertEquals(4, latency.getCount()); // The replay of the saved message isn't timed
+        assertThat(latency.getValueAtPercentile(50.0)).isLessThanOrEqualTo(latency.getValueAtPercentile(99.9));
+        assertThat(latency.getValueAtPercentile(99.9)).isLessThanOrEqualTo(latency.getMaxValue());
+        assertEquals(latency.getMaxValue(), metrics.getDelegateLatencyMaxNanos());
+        assertEquals(4, metrics.getDelegateLatency().getCount()); // The ended thread's counts were merged
+
+        adapter.setDelegateLatencyRecorded(false);
+        adapter.log(LogService.LOG_INFO, "Untimed message");
+        logger.info("Untimed logger message");
+        assertEquals(4, metrics.getDelegateCallCount());
+        assertEquals(7, logservice.getLogmessages().size());
+    }
+
+    @Test
+    void testDelegateLatencyRecordedInAsynchronousDispatchMode() {
+        var adapter = new LogServiceAdapter()
+            .setAsynchronousDispatch(true)
+            .setDelegateLatencyRecorded(true);
+        var logservice = new MockLogService();
+        adapter.setLogService(logservice);
+        adapter.log(LogService.LOG_INFO, "Info message");
+        adapter.close();
+
+        assertEquals(1, logservice.getLogmessages().size());
+        assertEquals(1, adapter.getMetrics().getDelegateCallCount());
+    }
+
+    @Test
+    void testLatencySnapshotPercentiles() {
+        var empty = new LatencySnapshot(new long[LatencyHistogram.BUCKET_COUNT]);
+        assertEquals(0, empty.getCount());
+        assertEquals(0, empty.getValueAtPercentile(99.0));
+        assertEquals(0, empty.getMaxValue());
+
+        var counts = new long[LatencyHistogram.BUCKET_COUNT];
+        counts[10] = 900;
+        counts[500] = 99;
+        counts[900] = 1;
+        var snapshot = new LatencySnapshot(counts);
+        assertEquals(1000, snapshot.getCount());
+        assertEquals(10, snapshot.getValueAtPercentile(50.0));
+        assertEquals(LatencyHistogram.highestValueInBucket(500), snapshot.getValueAtPercentile(99.0));
+        assertEquals(LatencyHistogram.highestValueInBucket(500), snapshot.getValueAtPercentile(99.9));
+        assertEquals(LatencyHistogram.highestValueInBucket(900), snapshot.getValueAtPercentile(100.0));
+        assertEquals(LatencyHistogram.highestValueInBucket(900), snapshot.getMaxValue());
+        assertEquals(Long.MAX_VALUE, LatencyHistogram.highestValueInBucket(LatencyHistogram.BUCKET_COUNT - 1));
+    }
+
+    @Test
+    void testLatencyHistogramCountsLatenciesOfAllThreads() throws Exception {
+        var histogram = new LatencyHistogram();
+        var threads = new ArrayList<Thread>();
+        for (var i = 0; i < 10; ++i) {
+            var thread = new Thread(() -> {
+                for (var j = 0; j < 1000; ++j) {
+                    histogram.record(100);
+                }
+            });
+            threads.add(thread);
+            thread.start();
+        }
+
+        for (var thread : threads) {
+            thread.join();
+        }
+
+        histogram.record(100);
+        assertEquals(10001, Arrays.stream(histogram.counts()).sum()); // Threads sharing a stripe lose no counts
+    }
+
+    static class MockLogServiceWithLogListener extends MockLogService implements LogListener {
+        final List<LogEntry> entries = new ArrayList<>();
+
+        @Override
+        public void logged(LogEntry entry) {
+            entries.add(entry);
+        }
+    }
+
 }
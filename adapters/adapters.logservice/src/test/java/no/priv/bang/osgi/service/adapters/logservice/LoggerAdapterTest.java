@@ -1,5 +1,5 @@
 /*
- * Copyright 2021-2024 Steinar Bang
+ * Copyright 2021-2026 Steinar Bang
  *
  * Licensed under the Apache License, Version 2.0 (the "License");
  * you may not use this file except in compliance with the License.
@@ -18,13 +18,21 @@ package no.priv.bang.osgi.service.adapters.logservice;
 import static org.assertj.core.api.Assertions.assertThat;
 import static org.junit.jupiter.api.Assertions.*;
 import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
 import static org.mockito.Mockito.*;
 
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
 import org.junit.jupiter.api.Test;
 import org.mockito.ArgumentMatchers;
+import org.osgi.service.log.LogLevel;
 import org.osgi.service.log.LogService;
 import org.osgi.service.log.Logger;
 import org.osgi.service.log.LoggerConsumer;
+import org.osgi.service.log.admin.LoggerAdmin;
+import org.osgi.service.log.admin.LoggerContext;
 
 import no.priv.bang.osgi.service.mocks.logservice.MockLogService;
 
@@ -320,6 +328,168 @@ class LoggerAdapterTest {
         assertEquals("[ERROR] Message 4 123 456 789", mockLogService.getLogmessages().get(logCount4 - 1));
     }
 
+    @Test
+    void testLogBeforeLogServiceIsSet() {
+        var adapter = new LoggerAdapter(LoggerAdapterTest.class);
+        assertEquals(LoggerAdapterTest.class.getName(), adapter.getName());
+        assertTrue(adapter.isDebugEnabled());
+        var formatCalls = new AtomicInteger();
+        var argument = new Object() {
+                @Override
+                public String toString() {
+                    return Integer.toString(formatCalls.incrementAndGet());
+                }
+            };
+        adapter.trace("Message {}", argument);
+        adapter.debug("Message {}", argument);
+        adapter.info("Message {} {}", argument, Integer.valueOf(123));
+        adapter.warn("Message 4");
+        adapter.error("Message {} {} {}", argument, Integer.valueOf(123), Integer.valueOf(456));
+        assertEquals(0, formatCalls.get(), "Nothing should be formatted before the LogService is set");
+
+        var mockLogService = new MockLogService();
+        mockLogService.setTraceEnabled(false);
+        mockLogService.setDebugEnabled(false);
+        adapter.setLogService(mockLogService);
+        assertEquals(2, formatCalls.get(), "Only the log calls of enabled levels should be formatted");
+        assertThat(mockLogService.getLogmessages()).containsExactly(
+            "[INFO] Message 1 123",
+            "[WARNING] Message 4",
+            "[ERROR] Message 2 123 456");
+
+        adapter.info("Message 5");
+        assertEquals("[INFO] Message 5", mockLogService.getLogmessages().get(3));
+    }
+
+    @Test
+    void testLoggerConsumerBeforeLogServiceIsSet() throws Exception {
+        var adapter = new LoggerAdapter(LoggerAdapterTest.class);
+        var calls = new AtomicInteger();
+        adapter.trace(l -> l.trace("Message {}", calls.incrementAndGet()));
+        adapter.error(l -> l.error("Message {}", calls.incrementAndGet()));
+        assertEquals(0, calls.get());
+
+        var mockLogService = new MockLogService();
+        mockLogService.setTraceEnabled(false);
+        adapter.setLogService(mockLogService);
+        assertEquals(1, calls.get());
+        assertThat(mockLogService.getLogmessages()).containsExactly("[ERROR] Message 1");
+
+        adapter.info(l -> l.info("Message {}", calls.incrementAndGet()));
+        assertEquals("[INFO] Message 2", mockLogService.getLogmessages().get(1));
+    }
+
+    @Test
+    void testLogAfterLogServiceIsUnset() {
+        var adapter = new LoggerAdapter(LoggerAdapterTest.class);
+        adapter.setLogService(new MockLogService());
+        adapter.setLogService(null);
+        adapter.info("Message {}", Integer.valueOf(1));
+
+        var mockLogService = new MockLogService();
+        adapter.setLogService(mockLogService);
+        assertThat(mockLogService.getLogmessages()).containsExactly("[INFO] Message 1");
+    }
+
+    @Test
+    void testDiscardLogCallsWithoutLogService() {
+        var adapter = new LoggerAdapter(LoggerAdapterTest.class).setSaveLogCallsWithoutLogService(false);
+        assertEquals(LoggerAdapterTest.class.getName(), adapter.getName());
+        assertFalse(adapter.isTraceEnabled());
+        assertFalse(adapter.isDebugEnabled());
+        assertFalse(adapter.isInfoEnabled());
+        assertFalse(adapter.isWarnEnabled());
+        assertFalse(adapter.isErrorEnabled());
+        adapter.info("Message {}", Integer.valueOf(1));
+        adapter.error("Message {} {}", Integer.valueOf(2), new IllegalStateException());
+        adapter.audit("Message 3");
+
+        var mockLogService = new MockLogService();
+        adapter.setLogService(mockLogService);
+        assertTrue(adapter.isInfoEnabled());
+        adapter.info("Message {}", Integer.valueOf(4));
+        assertThat(mockLogService.getLogmessages()).containsExactly("[INFO] Message 4");
+
+        adapter.setLogService(null);
+        adapter.info("Message {}", Integer.valueOf(5));
+        var newLogService = new MockLogService();
+        adapter.setLogService(newLogService);
+        assertThat(newLogService.getLogmessages()).isEmpty();
+    }
+
+    @Test
+    void testCachedEnabledLevels() {
+        var mockLogService = new MockLogService();
+        var adapter = new LoggerAdapter(LoggerAdapterTest.class).setCacheEnabledLevels(true);
+        adapter.setLogService(mockLogService);
+        assertTrue(adapter.isDebugEnabled());
+
+        // The cached levels are used until the adapters are told that the levels have changed
+        mockLogService.setDebugEnabled(false);
+        assertTrue(adapter.isDebugEnabled());
+        LoggerAdapter.logLevelsChanged();
+        assertFalse(adapter.isDebugEnabled());
+        assertTrue(adapter.isInfoEnabled());
+        adapter.debug("Message {}", Integer.valueOf(1));
+        adapter.info("Message {}", Integer.valueOf(2));
+        assertThat(mockLogService.getLogmessages()).containsExactly("[INFO] Message 2");
+
+        // Setting a new LogService checks the levels again
+        var newLogService = new MockLogService();
+        adapter.setLogService(newLogService);
+        assertTrue(adapter.isDebugEnabled());
+    }
+
+    @Test
+    void testCachedEnabledLevelsCheckedAgainWhenAnotherAdapterSetsLogService() {
+        var mockLogService = new MockLogService();
+        var adapter = new LoggerAdapter(LoggerAdapterTest.class).setCacheEnabledLevels(true);
+        adapter.setLogService(mockLogService);
+        assertTrue(adapter.isDebugEnabled());
+
+        mockLogService.setDebugEnabled(false);
+        new LoggerAdapter(LoggerAdapterTest.class).setLogService(mockLogService);
+        assertFalse(adapter.isDebugEnabled());
+    }
+
+    @Test
+    void testCachedEnabledLevelsCheckedAgainAfterChangeThroughLoggerAdmin() {
+        var mockLogService = new MockLogService();
+        var adapter = new LoggerAdapter(LoggerAdapterTest.class).setCacheEnabledLevels(true);
+        adapter.setLogService(mockLogService);
+        assertTrue(adapter.isDebugEnabled());
+
+        LoggerAdmin loggerAdmin = name -> new MockLoggerContext(name, mockLogService);
+        var loggerContext = LoggerAdapter.notifyingLoggerAdmin(loggerAdmin).getLoggerContext(null);
+        loggerContext.setLogLevels(Map.of(Logger.ROOT_LOGGER_NAME, LogLevel.INFO));
+        assertFalse(adapter.isDebugEnabled());
+        assertTrue(adapter.isInfoEnabled());
+        assertEquals(LogLevel.INFO, loggerContext.getLogLevels().get(Logger.ROOT_LOGGER_NAME));
+
+        loggerContext.clear();
+        assertTrue(adapter.isDebugEnabled());
+        assertTrue(loggerContext.isEmpty());
+    }
+
+    @Test
+    void testCachedEnabledLevelsSkipLoggerForDisabledLevels() throws Exception {
+        var logservice = mock(LogService.class);
+        var logger = mock(Logger.class);
+        when(logservice.getLogger(any(Class.class))).thenReturn(logger);
+        when(logger.isInfoEnabled()).thenReturn(true);
+        var adapter = new LoggerAdapter(LoggerAdapterTest.class).setCacheEnabledLevels(true);
+        adapter.setLogService(logservice);
+
+        adapter.debug("Message {}", Integer.valueOf(1));
+        adapter.debug("Message {}", Integer.valueOf(2));
+        adapter.debug(createMockLoggerConsumer());
+        adapter.info("Message {}", Integer.valueOf(3));
+        assertFalse(adapter.isDebugEnabled());
+        verify(logger, times(1)).isDebugEnabled();
+        verify(logger, never()).debug(anyString(), any(Object.class));
+        verify(logger, times(1)).info("Message {}", Integer.valueOf(3));
+    }
+
     private LoggerConsumer<Exception> createMockLoggerConsumer() {
         return new LoggerConsumer<Exception>() {
 
@@ -330,4 +500,140 @@ class LoggerAdapterTest {
         };
     }
 
+    @Test
+    void testGetFormatterLogger() {
+        var adapter = new LoggerAdapter(LoggerAdapterTest.class);
+        var formatterLogger = adapter.getFormatterLogger();
+        assertSame(formatterLogger, adapter.getFormatterLogger());
+        adapter.info("Message {}", 1);
+        formatterLogger.info("Message %d", 2);
+        adapter.info("Message {}", 3);
+
+        var logservice = new MockLogService();
+        adapter.setLogService(logservice);
+        assertThat(logservice.getLogmessages()).containsExactly("[INFO] Message 1", "[INFO] Message 2", "[INFO] Message 3");
+        formatterLogger.warn("Message %s", "4");
+        assertEquals("[WARNING] Message 4", logservice.getLogmessages().get(3));
+        assertEquals(LoggerAdapterTest.class.getCanonicalName(), formatterLogger.getName());
+
+        adapter.setLogService(null);
+        formatterLogger.error("Message %x", 255);
+        var logservice2 = new MockLogService();
+        adapter.setLogService(logservice2);
+        assertThat(logservice2.getLogmessages()).containsExactly("[ERROR] Message ff");
+    }
+
+    @Test
+    void testFormatterLoggerAdapter() {
+        var adapter = new FormatterLoggerAdapter(LoggerAdapterTest.class);
+        assertSame(adapter, adapter.getFormatterLogger());
+        adapter.info("Message %s %d", "one", 2);
+
+        var logservice = new MockLogService();
+        adapter.setLogService(logservice);
+        assertThat(logservice.getLogmessages()).containsExactly("[INFO] Message one 2");
+    }
+
+    @Test
+    void testMetrics() {
+        var adapter = new LoggerAdapter(LoggerAdapterTest.class);
+        assertNull(adapter.getMetrics());
+        adapter.setMetricsEnabled(true);
+        adapter.info("Message 1");
+        adapter.getFormatterLogger().info("Message %d", 2);
+
+        var metrics = adapter.getMetrics();
+        assertEquals(2, metrics.getBufferSize());
+        var logservice = new MockLogService();
+        adapter.setLogService(logservice);
+        adapter.info("Message {}", 3);
+        adapter.getFormatterLogger().warn("Message %d", 4);
+        assertThat(logservice.getLogmessages()).containsExactly("[INFO] Message 1", "[INFO] Message 2", "[INFO] Message 3", "[WARNING] Message 4");
+        assertEquals(3, metrics.getInfoCount());
+        assertEquals(1, metrics.getWarningCount());
+        assertEquals(1, metrics.getReplayCount());
+        assertEquals(2, metrics.getReplayedMessageCount());
+
+        adapter.setMetricsEnabled(false);
+        adapter.info("Message {}", 5);
+        assertEquals(3, metrics.getInfoCount());
+        assertThat(logservice.getLogmessages()).contains("[INFO] Message 5");
+    }
+
+    @Test
+    void testMetricsDontCountLogCallsOfDisabledLevels() {
+        var adapter = new LoggerAdapter(LoggerAdapterTest.class).setMetricsEnabled(true);
+        var logservice = new MockLogService().setDebugEnabled(false);
+        adapter.setLogService(logservice);
+        for (var i = 0; i < 10; ++i) {
+            adapter.debug("Message {}", i);
+        }
+
+        adapter.info("Message {}", 10);
+        assertThat(logservice.getLogmessages()).containsExactly("[INFO] Message 10");
+        var metrics = adapter.getMetrics();
+        assertEquals(0, metrics.getDebugCount());
+        assertEquals(1, metrics.getInfoCount());
+    }
+
+    @Test
+    void testDelegateLatencyRecorded() {
+        var adapter = new LoggerAdapter(LoggerAdapterTest.class)
+            .setDelegateLatencyRecorded(true);
+        var logservice = new MockLogService();
+        adapter.setLogService(logservice);
+        adapter.info("Message {}", 1);
+        adapter.warn("Message {}", 2);
+
+        assertThat(logservice.getLogmessages()).containsExactly("[INFO] Message 1", "[WARNING] Message 2");
+        assertEquals(2, adapter.getMetrics().getDelegateLatency().getCount());
+    }
+
+
+    /**
+     * A {@link LoggerContext} that sets the debug level of a {@link MockLogService}.
+     */
+    static class MockLoggerContext implements LoggerContext {
+        private final String name;
+        private final MockLogService logService;
+        private final Map<String, LogLevel> logLevels = new HashMap<>();
+
+        MockLoggerContext(String name, MockLogService logService) {
+            this.name = name;
+            this.logService = logService;
+        }
+
+        @Override
+        public String getName() {
+            return name;
+        }
+
+        @Override
+        public LogLevel getEffectiveLogLevel(String loggerName) {
+            return logLevels.getOrDefault(Logger.ROOT_LOGGER_NAME, LogLevel.DEBUG);
+        }
+
+        @Override
+        public Map<String, LogLevel> getLogLevels() {
+            return logLevels;
+        }
+
+        @Override
+        public void setLogLevels(Map<String, LogLevel> levels) {
+            logLevels.clear();
+            logLevels.putAll(levels);
+            logService.setDebugEnabled(getEffectiveLogLevel(Logger.ROOT_LOGGER_NAME).implies(LogLevel.DEBUG));
+        }
+
+        @Override
+        public void clear() {
+            setLogLevels(Map.of());
+        }
+
+        @Override
+        public boolean isEmpty() {
+            return logLevels.isEmpty();
+        }
+    }
+
 }
@@ -1,5 +1,5 @@
 /*
- * Copyright 2021-2023 Steinar Bang
+ * Copyright 2021-2026 Steinar Bang
  *
  * Licensed under the Apache License, Version 2.0 (the "License");
  * you may not use this file except in compliance with the License.
@@ -69,8 +69,9 @@ public class MockFormatterLogger implements FormatterLogger {
 
     @Override
     public <E extends Exception> void trace(LoggerConsumer<E> consumer) throws E {
-        /* Empty implementation */
-
+        if (isTraceEnabled()) {
+            consumer.accept(this);
+        }
     }
 
     @Override
@@ -108,8 +109,9 @@ public class MockFormatterLogger implements FormatterLogger {
 
     @Override
     public <E extends Exception> void debug(LoggerConsumer<E> consumer) throws E {
-        /* Empty implementation */
-
+        if (isDebugEnabled()) {
+            consumer.accept(this);
+        }
     }
 
     @Override
@@ -147,8 +149,9 @@ public class MockFormatterLogger implements FormatterLogger {
 
     @Override
     public <E extends Exception> void info(LoggerConsumer<E> consumer) throws E {
-        /* Empty implementation */
-
+        if (isInfoEnabled()) {
+            consumer.accept(this);
+        }
     }
 
     @Override
@@ -186,8 +189,9 @@ public class MockFormatterLogger implements FormatterLogger {
 
     @Override
     public <E extends Exception> void warn(LoggerConsumer<E> consumer) throws E {
-        /* Empty implementation */
-
+        if (isWarnEnabled()) {
+            consumer.accept(this);
+        }
     }
 
     @Override
@@ -225,8 +229,9 @@ public class MockFormatterLogger implements FormatterLogger {
 
     @Override
     public <E extends Exception> void error(LoggerConsumer<E> consumer) throws E {
-        /* Empty implementation */
-
+        if (isErrorEnabled()) {
+            consumer.accept(this);
+        }
     }
 
     @Override
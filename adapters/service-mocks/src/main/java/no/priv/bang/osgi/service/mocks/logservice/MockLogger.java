@@ -1,5 +1,5 @@
 /*
- * Copyright 2021-2023 Steinar Bang
+ * Copyright 2021-2026 Steinar Bang
  *
  * Licensed under the Apache License, Version 2.0 (the "License");
  * you may not use this file except in compliance with the License.
@@ -71,8 +71,9 @@ public class MockLogger implements Logger {
 
     @Override
     public <E extends Exception> void trace(LoggerConsumer<E> consumer) throws E {
-        /* Empty implementation */
-
+        if (isTraceEnabled()) {
+            consumer.accept(this);
+        }
     }
 
     @Override
@@ -110,8 +111,9 @@ public class MockLogger implements Logger {
 
     @Override
     public <E extends Exception> void debug(LoggerConsumer<E> consumer) throws E {
-        /* Empty implementation */
-
+        if (isDebugEnabled()) {
+            consumer.accept(this);
+        }
     }
 
     @Override
@@ -149,8 +151,9 @@ public class MockLogger implements Logger {
 
     @Override
     public <E extends Exception> void info(LoggerConsumer<E> consumer) throws E {
-        /* Empty implementation */
-
+        if (isInfoEnabled()) {
+            consumer.accept(this);
+        }
     }
 
     @Override
@@ -188,8 +191,9 @@ public class MockLogger implements Logger {
 
     @Override
     public <E extends Exception> void warn(LoggerConsumer<E> consumer) throws E {
-        /* Empty implementation */
-
+        if (isWarnEnabled()) {
+            consumer.accept(this);
+        }
     }
 
     @Override
@@ -227,8 +231,9 @@ public class MockLogger implements Logger {
 
     @Override
     public <E extends Exception> void error(LoggerConsumer<E> consumer) throws E {
-        /* Empty implementation */
-
+        if (isErrorEnabled()) {
+            consumer.accept(this);
+        }
     }
 
     @Override
@@ -0,0 +1,104 @@
+/*
+ * Copyright 2026 Steinar Bang
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package no.priv.bang.osgi.service.mocks.measurement;
+
+import java.lang.management.ManagementFactory;
+import java.util.function.Supplier;
+
+import org.openjdk.jol.info.GraphLayout;
+import org.openjdk.jol.vm.VM;
+
+/**
+ * Measurements of heap use shared by the allocation and footprint tests of
+ * the adapters.
+ *
+ * <p>The bytes allocated by a call are measured with
+ * {@link com.sun.management.ThreadMXBean#getThreadAllocatedBytes(long)}.  The
+ * call is repeated enough times before the measurement for the JIT compiler to
+ * kick in, and the bytes allocated are averaged over many calls, so that the
+ * few bytes allocated by the measurement itself round down to zero.
+ *
+ * <p>Footprints are measured with Java Object Layout, which the tests using
+ * them must have as a dependency.
+ *
+ * @author Steinar Bang
+ *
+ */
+public final class HeapMeasurement {
+
+    public static final int WARMUP_CALLS = 20000;
+    public static final int MEASURED_CALLS = 100000;
+
+    private HeapMeasurement() {}
+
+    /**
+     * @return true if this JVM can tell the bytes allocated by a thread
+     */
+    public static boolean canMeasureAllocatedBytes() {
+        var threads = ManagementFactory.getThreadMXBean();
+        if (!(threads instanceof com.sun.management.ThreadMXBean)) {
+            return false;
+        }
+
+        var allocationMeter = (com.sun.management.ThreadMXBean) threads;
+        return allocationMeter.isThreadAllocatedMemorySupported() && allocationMeter.isThreadAllocatedMemoryEnabled();
+    }
+
+    /**
+     * Find the average number of bytes allocated by a call, after
+     * {@link #WARMUP_CALLS} calls, over {@link #MEASURED_CALLS} calls.  Only
+     * call this if {@link #canMeasureAllocatedBytes()} is true.
+     *
+     * @param call the call to measure
+     * @return the bytes allocated per call, rounded down
+     */
+    public static long allocatedBytesPerCall(Runnable call) {
+        var allocationMeter = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        for (var i = 0; i < WARMUP_CALLS; ++i) {
+            call.run();
+        }
+
+        var threadId = Thread.currentThread().getId();
+        var allocatedBefore = allocationMeter.getThreadAllocatedBytes(threadId);
+        for (var i = 0; i < MEASURED_CALLS; ++i) {
+            call.run();
+        }
+
+        var allocatedAfter = allocationMeter.getThreadAllocatedBytes(threadId);
+        return (allocatedAfter - allocatedBefore) / MEASURED_CALLS;
+    }
+
+    /**
+     * @return true if the JVM uses compressed references, which the footprint budgets are for
+     */
+    public static boolean hasCompressedReferences() {
+        return VM.current().sizeOfField(Object.class.getName()) == 4;
+    }
+
+    /**
+     * Find the heap footprint of one more instance, by measuring the objects
+     * reachable from two instances, and subtracting the objects reachable from one.
+     *
+     * @param factory creates the instances to measure
+     * @return the bytes one more instance adds to the heap
+     */
+    public static long footprintPerInstance(Supplier<Object> factory) {
+        var first = factory.get();
+        var second = factory.get();
+        return GraphLayout.parseInstance(first, second).totalSize() - GraphLayout.parseInstance(first).totalSize();
+    }
+
+}
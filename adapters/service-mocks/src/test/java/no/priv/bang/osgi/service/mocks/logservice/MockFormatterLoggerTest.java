@@ -1,5 +1,5 @@
 /*
- * Copyright 2021 Steinar Bang
+ * Copyright 2021-2026 Steinar Bang
  *
  * Licensed under the Apache License, Version 2.0 (the "License");
  * you may not use this file except in compliance with the License.
@@ -265,4 +265,34 @@ class MockFormatterLoggerTest {
         assertEquals(name, logger.getName());
     }
 
+    @Test
+    void testLoggerConsumer() throws Exception {
+        MockLogService mockLogService = new MockLogService();
+        FormatterLogger logger = mockLogService.getLogger("TestLogger", FormatterLogger.class);
+        logger.trace(l -> l.trace("Message %s", "trace"));
+        logger.debug(l -> l.debug("Message %s", "debug"));
+        logger.info(l -> l.info("Message %s", "info"));
+        logger.warn(l -> l.warn("Message %s", "warn"));
+        logger.error(l -> l.error("Message %s", "error"));
+        assertThat(mockLogService.getLogmessages()).containsExactly(
+            "[DEBUG] Message trace",
+            "[DEBUG] Message debug",
+            "[INFO] Message info",
+            "[WARNING] Message warn",
+            "[ERROR] Message error");
+
+        // The consumer is only called when the level is enabled
+        mockLogService.setTraceEnabled(false);
+        mockLogService.setDebugEnabled(false);
+        mockLogService.setInfoEnabled(false);
+        mockLogService.setWarnEnabled(false);
+        mockLogService.setErrorEnabled(false);
+        logger.trace(l -> fail("Trace consumer should not be called"));
+        logger.debug(l -> fail("Debug consumer should not be called"));
+        logger.info(l -> fail("Info consumer should not be called"));
+        logger.warn(l -> fail("Warn consumer should not be called"));
+        logger.error(l -> fail("Error consumer should not be called"));
+        assertEquals(5, mockLogService.getLogmessages().size());
+    }
+
 }
@@ -1,5 +1,5 @@
 /*
- * Copyright 2021 Steinar Bang
+ * Copyright 2021-2026 Steinar Bang
  *
  * Licensed under the Apache License, Version 2.0 (the "License");
  * you may not use this file except in compliance with the License.
@@ -356,4 +356,34 @@ class MockLoggerTest {
         assertNull(logger);
     }
 
+    @Test
+    void testLoggerConsumer() throws Exception {
+        MockLogService mockLogService = new MockLogService();
+        Logger logger = mockLogService.getLogger("TestLogger");
+        logger.trace(l -> l.trace("Message {}", "trace"));
+        logger.debug(l -> l.debug("Message {}", "debug"));
+        logger.info(l -> l.info("Message {}", "info"));
+        logger.warn(l -> l.warn("Message {}", "warn"));
+        logger.error(l -> l.error("Message {}", "error"));
+        assertThat(mockLogService.getLogmessages()).containsExactly(
+            "[DEBUG] Message trace",
+            "[DEBUG] Message debug",
+            "[INFO] Message info",
+            "[WARNING] Message warn",
+            "[ERROR] Message error");
+
+        // The consumer is only called when the level is enabled
+        mockLogService.setTraceEnabled(false);
+        mockLogService.setDebugEnabled(false);
+        mockLogService.setInfoEnabled(false);
+        mockLogService.setWarnEnabled(false);
+        mockLogService.setErrorEnabled(false);
+        logger.trace(l -> fail("Trace consumer should not be called"));
+        logger.debug(l -> fail("Debug consumer should not be called"));
+        logger.info(l -> fail("Info consumer should not be called"));
+        logger.warn(l -> fail("Warn consumer should not be called"));
+        logger.error(l -> fail("Error consumer should not be called"));
+        assertEquals(5, mockLogService.getLogmessages().size());
+    }
+
 }